@@ -0,0 +1,58 @@
+package org.beykery.eu.bench;
+
+import org.beykery.eu.util.EthContractUtil;
+import org.beykery.eu.util.SignedBatch;
+import org.beykery.eu.util.Signer;
+import org.openjdk.jmh.annotations.*;
+import org.web3j.crypto.RawTransaction;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 批量签名：逐个顺序签名 vs 并行
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BatchSignBenchmark {
+
+    private static final String PRIVATE_KEY = "0x4c0883a69102937d6231471b5dbb6204fe5129617082792ae468d01a3f362318";
+
+    private static final String TO = "0x8aCc161acB2626505755bBF36184841B8c099806";
+
+    @Param({"1000"})
+    private int size;
+
+    private List<RawTransaction> txs;
+
+    private Signer signer;
+
+    @Setup
+    public void setup() {
+        signer = new Signer(PRIVATE_KEY);
+        txs = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            txs.add(EthContractUtil.rawTransaction(BigInteger.valueOf(i), BigInteger.valueOf(5_000_000_000L), BigInteger.valueOf(21000), TO, BigInteger.ONE, "0x"));
+        }
+    }
+
+    @Benchmark
+    public List<String> sequential() {
+        List<String> ret = new ArrayList<>(size);
+        for (RawTransaction tx : txs) {
+            ret.add(EthContractUtil.signTransaction(PRIVATE_KEY, tx, 56));
+        }
+        return ret;
+    }
+
+    @Benchmark
+    public SignedBatch parallel() {
+        return signer.signAll(txs, 56);
+    }
+}
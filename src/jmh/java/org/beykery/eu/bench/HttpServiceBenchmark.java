@@ -0,0 +1,46 @@
+package org.beykery.eu.bench;
+
+import okhttp3.ResponseBody;
+import org.beykery.eu.util.EuHttpService;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * EuHttpService响应处理
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HttpServiceBenchmark {
+
+    private Service service;
+
+    private byte[] logs;
+
+    @Setup
+    public void setup() throws IOException {
+        service = new Service();
+        logs = StubWeb3jService.fixture("eth_getLogs");
+    }
+
+    @Benchmark
+    public InputStream buildInputStream() throws IOException {
+        return service.build(ResponseBody.create(logs, EuHttpService.JSON_MEDIA_TYPE));
+    }
+
+    /**
+     * 暴露buildInputStream
+     */
+    private static class Service extends EuHttpService {
+
+        private InputStream build(ResponseBody body) throws IOException {
+            return buildInputStream(DEFAULT_URL, body);
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package org.beykery.eu.bench;
+
+import org.beykery.eu.event.LogEvent;
+import org.beykery.eu.util.EthContractUtil;
+import org.beykery.eu.util.EuGeth;
+import org.beykery.eu.util.EventSet;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.web3j.abi.TypeReference;
+import org.web3j.abi.datatypes.Address;
+import org.web3j.abi.datatypes.Event;
+import org.web3j.abi.datatypes.generated.Uint112;
+import org.web3j.abi.datatypes.generated.Uint256;
+import org.web3j.protocol.ObjectMapperFactory;
+import org.web3j.protocol.core.methods.response.EthGetTransactionReceipt;
+import org.web3j.protocol.core.methods.response.TransactionReceipt;
+import org.web3j.protocol.geth.Geth;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * eth_getLogs和receipt的解码
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LogDecodeBenchmark {
+
+    public static final Event SYNC_EVENT = new Event(
+            "Sync",
+            Arrays.asList(
+                    new TypeReference<Uint112>() {
+                    },
+                    new TypeReference<Uint112>() {
+                    }
+            )
+    );
+
+    public static final Event TRANSFER_EVENT = new Event(
+            "Transfer",
+            Arrays.asList(
+                    new TypeReference<Address>(true) {
+                    },
+                    new TypeReference<Address>(true) {
+                    },
+                    new TypeReference<Uint256>() {
+                    }
+            )
+    );
+
+    private Geth web3j;
+
+    private List<Event> events;
+
+    private EventSet set;
+
+    private TransactionReceipt receipt;
+
+    @Setup
+    public void setup() throws Exception {
+        web3j = new EuGeth(StubWeb3jService.of("eth_getLogs"));
+        events = Arrays.asList(SYNC_EVENT, TRANSFER_EVENT);
+        set = EventSet.of(events);
+        receipt = ObjectMapperFactory.getObjectMapper()
+                .readValue(StubWeb3jService.fixture("eth_getTransactionReceipt"), EthGetTransactionReceipt.class)
+                .getResult();
+    }
+
+    /**
+     * 每次调用都重新计算topic
+     */
+    @Benchmark
+    public List<LogEvent> getLogEvents() throws Exception {
+        return EthContractUtil.getLogEvents(web3j, 0, 1, events, Collections.EMPTY_LIST);
+    }
+
+    /**
+     * 预编译的EventSet
+     */
+    @Benchmark
+    public List<LogEvent> getLogEventsWithEventSet() throws Exception {
+        return EthContractUtil.getLogEvents(web3j, 0, 1, set);
+    }
+
+    /**
+     * 流式解析，只取块高
+     */
+    @Benchmark
+    public void getLazyLogEvents(Blackhole bh) throws Exception {
+        for (LogEvent le : EthContractUtil.getLazyLogEvents(web3j, 0, 1, set)) {
+            bh.consume(le.getBlockNumber());
+        }
+    }
+
+    /**
+     * 流式解析并解码全部值
+     */
+    @Benchmark
+    public void getLazyLogEventsDecoded(Blackhole bh) throws Exception {
+        for (LogEvent le : EthContractUtil.getLazyLogEvents(web3j, 0, 1, set)) {
+            bh.consume(le.getIndexedValues());
+            bh.consume(le.getNonIndexedValues());
+        }
+    }
+
+    @Benchmark
+    public List<LogEvent> receiptEvents() {
+        return EthContractUtil.events(receipt, events);
+    }
+
+    @Benchmark
+    public List<LogEvent> receiptEventsWithEventSet() {
+        return EthContractUtil.events(receipt, set);
+    }
+}
@@ -0,0 +1,47 @@
+package org.beykery.eu.bench;
+
+import org.beykery.eu.util.EthContractUtil;
+import org.beykery.eu.util.EuGeth;
+import org.openjdk.jmh.annotations.*;
+import org.web3j.protocol.core.methods.response.Transaction;
+import org.web3j.protocol.geth.Geth;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * pending transactions的batch拉取
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PendingBenchmark {
+
+    @Param({"1", "4"})
+    private int parallel;
+
+    @Param({"50"})
+    private int batchSize;
+
+    private Geth web3j;
+
+    private List<String> hashes;
+
+    @Setup
+    public void setup() throws Exception {
+        web3j = new EuGeth(StubWeb3jService.of("eth_getTransactionByHash"));
+        hashes = new ArrayList<>();
+        for (int i = 0; i < 400; i++) {
+            hashes.add(String.format("0x%064x", i));
+        }
+    }
+
+    @Benchmark
+    public List<Transaction> pendingTransactions() {
+        return EthContractUtil.pendingTransactions(web3j, hashes, parallel, batchSize);
+    }
+}
@@ -0,0 +1,61 @@
+package org.beykery.eu.bench;
+
+import org.beykery.eu.util.EthContractUtil;
+import org.beykery.eu.util.Signer;
+import org.openjdk.jmh.annotations.*;
+import org.web3j.abi.datatypes.Address;
+import org.web3j.abi.datatypes.Type;
+import org.web3j.abi.datatypes.Uint;
+import org.web3j.crypto.RawTransaction;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 签名和method id
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SignBenchmark {
+
+    private static final String PRIVATE_KEY = "0x4c0883a69102937d6231471b5dbb6204fe5129617082792ae468d01a3f362318";
+
+    private static final String TO = "0x8aCc161acB2626505755bBF36184841B8c099806";
+
+    private List<Type> params;
+
+    private Signer signer;
+
+    @Setup
+    public void setup() {
+        params = Arrays.asList(new Address(TO), new Uint(BigInteger.valueOf(123)));
+        signer = new Signer(PRIVATE_KEY);
+    }
+
+    @Benchmark
+    public String signLegacy() {
+        return EthContractUtil.signTransaction(PRIVATE_KEY, BigInteger.valueOf(5_000_000_000L), BigInteger.valueOf(21000), TO, BigInteger.ONE, "0x", BigInteger.TEN, 1);
+    }
+
+    @Benchmark
+    public String signLegacyHeldSigner() {
+        RawTransaction tx = EthContractUtil.rawTransaction(BigInteger.TEN, BigInteger.valueOf(5_000_000_000L), BigInteger.valueOf(21000), TO, BigInteger.ONE, "0x");
+        return signer.sign(tx, 1);
+    }
+
+    @Benchmark
+    public String signEip1559() {
+        return EthContractUtil.signTransaction(PRIVATE_KEY, BigInteger.valueOf(21000), TO, BigInteger.ONE, "0x", BigInteger.TEN, BigInteger.valueOf(1_000_000_000L), BigInteger.valueOf(5_000_000_000L), 1);
+    }
+
+    @Benchmark
+    public String buildMethodId() {
+        return EthContractUtil.buildMethodId("transfer", params);
+    }
+}
@@ -0,0 +1,90 @@
+package org.beykery.eu.bench;
+
+import org.web3j.protocol.Service;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 进程内的web3j service，按method返回录制的json
+ * <p>
+ * batch请求按请求个数重复对应method的结果
+ */
+public class StubWeb3jService extends Service {
+
+    /**
+     * method -> response
+     */
+    private final Map<String, byte[]> fixtures = new HashMap<>();
+
+    public StubWeb3jService() {
+        super(false);
+    }
+
+    /**
+     * 从classpath的fixtures目录加载method对应的响应
+     *
+     * @param methods
+     * @return
+     * @throws IOException
+     */
+    public static StubWeb3jService of(String... methods) throws IOException {
+        StubWeb3jService service = new StubWeb3jService();
+        for (String method : methods) {
+            service.fixtures.put(method, fixture(method));
+        }
+        return service;
+    }
+
+    /**
+     * fixture
+     *
+     * @param method
+     * @return
+     * @throws IOException
+     */
+    public static byte[] fixture(String method) throws IOException {
+        try (InputStream is = StubWeb3jService.class.getResourceAsStream("/fixtures/" + method + ".json")) {
+            if (is == null) {
+                throw new IOException("fixture not found : " + method);
+            }
+            return is.readAllBytes();
+        }
+    }
+
+    @Override
+    protected InputStream performIO(String request) throws IOException {
+        int i = request.indexOf("\"method\"");
+        int start = request.indexOf('"', request.indexOf(':', i) + 1) + 1;
+        String method = request.substring(start, request.indexOf('"', start));
+        byte[] response = fixtures.get(method);
+        if (response == null) {
+            throw new IOException("no fixture for " + method);
+        }
+        if (request.startsWith("[")) {
+            int n = 0;
+            for (int j = request.indexOf("\"method\""); j >= 0; j = request.indexOf("\"method\"", j + 1)) {
+                n++;
+            }
+            ByteArrayOutputStream out = new ByteArrayOutputStream(response.length * n + 2);
+            out.write('[');
+            for (int j = 0; j < n; j++) {
+                if (j > 0) {
+                    out.write(',');
+                }
+                out.write(response);
+            }
+            out.write(']');
+            return new ByteArrayInputStream(out.toByteArray());
+        }
+        return new ByteArrayInputStream(response);
+    }
+
+    @Override
+    public void close() {
+    }
+}
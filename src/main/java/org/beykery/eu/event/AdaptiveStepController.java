@@ -0,0 +1,195 @@
+package org.beykery.eu.event;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * AIMD步长控制
+ * <p>
+ * log数量、响应字节数、耗时都在限制内时步长加性增长，任一超过限制时按比例收缩；
+ * provider返回"范围过大"类错误时把当前步长的一半记为上限，限流错误步长不变，普通错误只减半不回到1
+ */
+@Slf4j
+public class AdaptiveStepController implements StepController {
+
+    /**
+     * 范围过大错误的关键字
+     */
+    private static final String[] RANGE_ERRORS = {
+            "block range",
+            "range is too large",
+            "range too large",
+            "query returned more than",
+            "response size",
+            "logs matched by query exceeds",
+            "query timeout"
+    };
+
+    /**
+     * 限流错误的关键字，和范围无关
+     */
+    private static final String[] RATE_ERRORS = {
+            "received: 429",
+            "rate limit",
+            "too many requests",
+            "request rate",
+            "capacity",
+            "quota"
+    };
+
+    /**
+     * provider允许的最大块数
+     */
+    private final long maxBlocks;
+
+    /**
+     * provider允许的最大log数
+     */
+    private final long maxLogs;
+
+    /**
+     * 响应最大字节数
+     */
+    private final long maxBytes;
+
+    /**
+     * 目标耗时(ms)
+     */
+    private final long targetLatency;
+
+    /**
+     * 加性增长量
+     */
+    private final long increase;
+
+    /**
+     * 乘性收缩因子
+     */
+    private final double decrease;
+
+    /**
+     * 从错误中学到的上限
+     */
+    private volatile long ceiling;
+
+    /**
+     * 达到上限后连续成功次数，用来试探放宽上限
+     */
+    private int atCeiling;
+
+    /**
+     * @param maxBlocks     provider允许的最大块数
+     * @param maxLogs       provider允许的最大log数
+     * @param maxBytes      响应最大字节数，小于等于0不限制
+     * @param targetLatency 目标耗时(ms)，小于等于0不限制
+     */
+    public AdaptiveStepController(long maxBlocks, long maxLogs, long maxBytes, long targetLatency) {
+        this(maxBlocks, maxLogs, maxBytes, targetLatency, Math.max(maxBlocks / 32, 1), 0.5);
+    }
+
+    /**
+     * @param maxBlocks     provider允许的最大块数
+     * @param maxLogs       provider允许的最大log数
+     * @param maxBytes      响应最大字节数，小于等于0不限制
+     * @param targetLatency 目标耗时(ms)，小于等于0不限制
+     * @param increase      加性增长量
+     * @param decrease      乘性收缩因子(0, 1)
+     */
+    public AdaptiveStepController(long maxBlocks, long maxLogs, long maxBytes, long targetLatency, long increase, double decrease) {
+        this.maxBlocks = Math.max(maxBlocks, 1);
+        this.maxLogs = maxLogs;
+        this.maxBytes = maxBytes;
+        this.targetLatency = targetLatency;
+        this.increase = Math.max(increase, 1);
+        this.decrease = decrease <= 0 || decrease >= 1 ? 0.5 : decrease;
+        this.ceiling = this.maxBlocks;
+    }
+
+    @Override
+    public long initial() {
+        return Math.min(increase, ceiling);
+    }
+
+    @Override
+    public long onSuccess(long step, long logSize, long bytes, long latency) {
+        // 各项相对于限制的负载，取最大
+        double load = 0;
+        if (maxLogs > 0) {
+            load = Math.max(load, (double) logSize / maxLogs);
+        }
+        if (maxBytes > 0 && bytes > 0) {
+            load = Math.max(load, (double) bytes / maxBytes);
+        }
+        if (targetLatency > 0) {
+            load = Math.max(load, (double) latency / targetLatency);
+        }
+        long next;
+        if (load > 1) {
+            next = (long) Math.min(step * decrease, step / load);
+        } else if (load > 0.8) {
+            next = step;    // 接近限制，保持
+        } else {
+            next = step + increase;
+        }
+        long c = ceiling;
+        if (next >= c) {
+            next = c;
+            if (++atCeiling >= 64 && c < maxBlocks) {
+                ceiling = Math.min(c + Math.max(c / 8, 1), maxBlocks);
+                atCeiling = 0;
+            }
+        } else {
+            atCeiling = 0;
+        }
+        return Math.max(next, 1);
+    }
+
+    @Override
+    public long onError(long step, Throwable ex) {
+        if (isRateLimit(ex)) {
+            return step;
+        }
+        long next = Math.max((long) (step * decrease), 1);
+        if (isRangeError(ex)) {
+            ceiling = next;
+            log.warn("range too large at step {}, ceiling set to {}", step, next);
+        }
+        atCeiling = 0;
+        return next;
+    }
+
+    /**
+     * 是否为范围过大类错误
+     *
+     * @param ex
+     * @return
+     */
+    public static boolean isRangeError(Throwable ex) {
+        return !isRateLimit(ex) && matches(ex, RANGE_ERRORS);
+    }
+
+    /**
+     * 是否为限流错误
+     *
+     * @param ex
+     * @return
+     */
+    public static boolean isRateLimit(Throwable ex) {
+        return matches(ex, RATE_ERRORS);
+    }
+
+    private static boolean matches(Throwable ex, String[] keys) {
+        while (ex != null) {
+            String msg = ex.getMessage();
+            if (msg != null) {
+                msg = msg.toLowerCase();
+                for (String e : keys) {
+                    if (msg.contains(e)) {
+                        return true;
+                    }
+                }
+            }
+            ex = ex.getCause();
+        }
+        return false;
+    }
+}
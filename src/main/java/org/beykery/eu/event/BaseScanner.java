@@ -40,7 +40,7 @@ public abstract class BaseScanner implements LogEventListener {
      * @param pendingParallel      pending parallel
      * @param pendingBatchSize     pending batch size
      * @param events               events for logs
-     * @param from                 from block
+     * @param from                 from block, 小于0时从checkpoint恢复，没有checkpoint时从当前块开始
      * @param sensitivity          sensitivity for interval
      * @param step                 step
      * @param maxRetry             max retry
@@ -71,11 +71,20 @@ public abstract class BaseScanner implements LogEventListener {
             this.from = from;
             this.contracts = contracts;
             scanner = new LogEventScanner(web3j, pxWeb3j, blockInterval, pendingInterval, pendingMaxDelay, pendingParallel, pendingBatchSize, maxRetry, retryInterval, logFromTx, this);
+            configure(scanner);
             return scanner.start(this.from, events, contracts == null || contracts.length == 0 ? Collections.EMPTY_LIST : Arrays.asList(contracts), currentBlockProvider, sensitivity, step);
         }
         return false;
     }
 
+    /**
+     * 启动前配置scanner（追块并行度等），默认不做任何配置
+     *
+     * @param scanner
+     */
+    protected void configure(LogEventScanner scanner) {
+    }
+
     /**
      * stop scan
      */
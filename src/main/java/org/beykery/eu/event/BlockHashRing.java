@@ -0,0 +1,120 @@
+package org.beykery.eu.event;
+
+/**
+ * 最近块hash的环形缓冲，高度递增写入，用于检测分叉
+ * <p>
+ * scanner 每个已通知窗口只写入末块一项，所以容量是窗口数而不是块数，高度之间不连续
+ */
+class BlockHashRing {
+
+    /**
+     * 高度
+     */
+    private final long[] heights;
+
+    /**
+     * hash
+     */
+    private final String[] hashes;
+
+    /**
+     * 最新一项的位置
+     */
+    private int head = -1;
+
+    /**
+     * 数量
+     */
+    private int size;
+
+    BlockHashRing(int capacity) {
+        this.heights = new long[capacity];
+        this.hashes = new String[capacity];
+    }
+
+    /**
+     * 写入，低于或等于最新高度的项会先被截掉
+     *
+     * @param height
+     * @param hash
+     */
+    synchronized void put(long height, String hash) {
+        truncate(height - 1);
+        head = (head + 1) % heights.length;
+        heights[head] = height;
+        hashes[head] = hash;
+        size = Math.min(size + 1, heights.length);
+    }
+
+    /**
+     * 某高度的hash
+     *
+     * @param height
+     * @return 不在缓冲中返回null
+     */
+    synchronized String get(long height) {
+        for (int i = 0; i < size; i++) {
+            if (height(i) == height) {
+                return hash(i);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 从新到旧第i项的高度
+     *
+     * @param i
+     * @return
+     */
+    synchronized long height(int i) {
+        return heights[index(i)];
+    }
+
+    /**
+     * 从新到旧第i项的hash
+     *
+     * @param i
+     * @return
+     */
+    synchronized String hash(int i) {
+        return hashes[index(i)];
+    }
+
+    /**
+     * 最旧的高度
+     *
+     * @return
+     */
+    synchronized long oldest() {
+        return size == 0 ? -1 : height(size - 1);
+    }
+
+    /**
+     * 去掉高于height的项
+     *
+     * @param height
+     */
+    synchronized void truncate(long height) {
+        while (size > 0 && heights[head] > height) {
+            hashes[head] = null;
+            head = (head - 1 + heights.length) % heights.length;
+            size--;
+        }
+    }
+
+    /**
+     * 清空
+     */
+    synchronized void clear() {
+        truncate(Long.MIN_VALUE);
+    }
+
+    synchronized int size() {
+        return size;
+    }
+
+    private int index(int i) {
+        return (head - i + heights.length) % heights.length;
+    }
+}
@@ -0,0 +1,33 @@
+package org.beykery.eu.event;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * 扫描进度存储
+ */
+public interface CheckpointStore extends Closeable {
+
+    /**
+     * 最后提交的高度
+     *
+     * @return 没有提交过返回-1
+     * @throws IOException
+     */
+    long load() throws IOException;
+
+    /**
+     * 提交，height及之前的块已处理
+     *
+     * @param height
+     * @throws IOException
+     */
+    void commit(long height) throws IOException;
+
+    /**
+     * 落盘
+     *
+     * @throws IOException
+     */
+    void flush() throws IOException;
+}
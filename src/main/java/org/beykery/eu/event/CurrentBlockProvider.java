@@ -14,4 +14,14 @@ public interface CurrentBlockProvider {
      * @return
      */
     long[] currentBlockNumberAndTimestamp() throws Exception;
+
+    /**
+     * scanner 启动时调用，provider 在有新块时调用 onNewHead 唤醒 scanner；一个 provider 可以被多个 scanner 绑定
+     *
+     * @param onNewHead
+     * @return 解除绑定（scanner 停止时调用）；为null表示不会主动通知新块，scanner 按预测的出块时间轮询
+     */
+    default Runnable bind(Runnable onNewHead) {
+        return null;
+    }
 }
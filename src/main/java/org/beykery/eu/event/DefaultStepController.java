@@ -0,0 +1,48 @@
+package org.beykery.eu.event;
+
+/**
+ * 默认步长控制，按log数量向targetSize靠拢，出错时回到1
+ */
+public class DefaultStepController implements StepController {
+
+    /**
+     * 目标log数量
+     */
+    private final long targetSize;
+
+    /**
+     * 最大步长
+     */
+    private final long maxStep;
+
+    /**
+     * 新估计值的比重(%)
+     */
+    private final long rate;
+
+    public DefaultStepController() {
+        this(1024 * 4, 1024, 60);
+    }
+
+    /**
+     * @param targetSize 目标log数量
+     * @param maxStep    最大步长
+     * @param rate       新估计值的比重(%)
+     */
+    public DefaultStepController(long targetSize, long maxStep, long rate) {
+        this.targetSize = targetSize;
+        this.maxStep = maxStep;
+        this.rate = rate;
+    }
+
+    @Override
+    public long onSuccess(long step, long logSize, long bytes, long latency) {
+        step = logSize > 0 ? ((step * targetSize / logSize) * rate + step * (100 - rate)) / 100 : step + 1;
+        return step < 1 ? 1 : (Math.min(step, maxStep));
+    }
+
+    @Override
+    public long onError(long step, Throwable ex) {
+        return 1;
+    }
+}
@@ -0,0 +1,106 @@
+package org.beykery.eu.event;
+
+import org.web3j.abi.FunctionReturnDecoder;
+import org.web3j.abi.TypeReference;
+import org.web3j.abi.datatypes.Event;
+import org.web3j.abi.datatypes.Type;
+import org.web3j.utils.Numeric;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 延迟解码的log event
+ * <p>
+ * 保存原始的topic和data字节，indexed/non indexed值在第一次访问时才解码
+ */
+public class LazyLogEvent extends LogEvent {
+
+    /**
+     * topic0, event signature
+     */
+    private String topic;
+
+    /**
+     * indexed topics, 每个32字节
+     */
+    private byte[] topics;
+
+    /**
+     * data
+     */
+    private byte[] data;
+
+    public LazyLogEvent() {
+    }
+
+    public String getTopic() {
+        return topic;
+    }
+
+    public void setTopic(String topic) {
+        this.topic = topic;
+    }
+
+    /**
+     * indexed topic个数
+     *
+     * @return
+     */
+    public int getIndexedSize() {
+        return topics == null ? 0 : topics.length / 32;
+    }
+
+    /**
+     * 原始indexed topics
+     *
+     * @return
+     */
+    public byte[] getTopics() {
+        return topics;
+    }
+
+    public void setTopics(byte[] topics) {
+        this.topics = topics;
+    }
+
+    /**
+     * 原始data
+     *
+     * @return
+     */
+    public byte[] getData() {
+        return data;
+    }
+
+    public void setData(byte[] data) {
+        this.data = data;
+    }
+
+    @Override
+    public List<Type> getIndexedValues() {
+        List<Type> values = super.getIndexedValues();
+        Event event = getEvent();
+        if (values == null && event != null) {
+            List<TypeReference<Type>> params = event.getIndexedParameters();
+            values = new ArrayList<>(params.size());
+            for (int i = 0; i < params.size(); i++) {
+                values.add(FunctionReturnDecoder.decodeIndexedValue(Numeric.toHexString(topics, i * 32, 32, true), params.get(i)));
+            }
+            setIndexedValues(values);
+        }
+        return values;
+    }
+
+    @Override
+    public List<Type> getNonIndexedValues() {
+        List<Type> values = super.getNonIndexedValues();
+        Event event = getEvent();
+        if (values == null && event != null) {
+            values = data == null || data.length == 0 ? Collections.EMPTY_LIST : FunctionReturnDecoder.decode(Numeric.toHexString(data), event.getNonIndexedParameters());
+            setNonIndexedValues(values);
+        }
+        return values;
+    }
+}
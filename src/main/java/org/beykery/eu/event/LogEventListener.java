@@ -68,6 +68,17 @@ public interface LogEventListener {
 
     void onWebsocketBroken(WebsocketNotConnectedException ex, long current, long currentTime);
 
+    /**
+     * 发现分叉，[from, to]上已通知的事件作废，scanner将从from重新扫描
+     *
+     * @param from
+     * @param to
+     * @param current
+     * @param currentTime
+     */
+    default void onRollback(long from, long to, long current, long currentTime) {
+    }
+
     /**
      * 事件顺序是否翻转
      *
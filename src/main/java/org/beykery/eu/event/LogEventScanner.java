@@ -2,10 +2,15 @@ package org.beykery.eu.event;
 
 import io.reactivex.Flowable;
 import lombok.Getter;
+import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
+import org.beykery.eu.util.BatchExecutor;
 import org.beykery.eu.util.EthContractUtil;
+import org.beykery.eu.util.EuHttpService;
+import org.beykery.eu.util.EventSet;
 import org.java_websocket.exceptions.WebsocketNotConnectedException;
 import org.web3j.abi.datatypes.Event;
+import org.web3j.protocol.core.DefaultBlockParameter;
 import org.web3j.protocol.core.DefaultBlockParameterName;
 import org.web3j.protocol.core.methods.response.EthBlock;
 import org.web3j.protocol.core.methods.response.EthChainId;
@@ -15,7 +20,10 @@ import org.web3j.protocol.websocket.events.PendingTransactionNotification;
 import java.io.IOException;
 import java.math.BigInteger;
 import java.util.*;
-import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * scan log event
@@ -60,13 +68,57 @@ public class LogEventScanner implements Runnable {
     /**
      * queue for hash
      */
-    private final LinkedBlockingDeque<PendingHash> pendingQueue;
+    private volatile PendingHashQueue pendingQueue;
+
+    /**
+     * pending 队列容量
+     */
+    @Setter
+    private int pendingCapacity = 1 << 16;
+
+    /**
+     * pending 队列满时的处理
+     */
+    @Setter
+    private PendingHashQueue.OverflowPolicy pendingOverflow = PendingHashQueue.OverflowPolicy.DROP_OLDEST;
+
+    /**
+     * pending hash 去重窗口(ms)，小于等于0时不去重
+     */
+    @Setter
+    private long pendingSeenWindow = 60_000;
+
+    /**
+     * 取pending交易用的executor，为null时按pendingParallel创建本scanner独占的
+     */
+    @Setter
+    private BatchExecutor pendingExecutor;
+
+    /**
+     * 是否由本scanner创建（stop时关闭）
+     */
+    private boolean ownPendingExecutor;
+
+    /**
+     * 缓存的chain id
+     */
+    private volatile BigInteger chainId;
+
+    /**
+     * 本scanner的唤醒信号
+     */
+    private final ScanSignal signal = new ScanSignal();
 
     /**
      * 事件
      */
     private List<Event> events;
 
+    /**
+     * 预编译的事件集合
+     */
+    private EventSet eventSet;
+
     /**
      * from block
      */
@@ -82,6 +134,12 @@ public class LogEventScanner implements Runnable {
      */
     private final boolean logFromTx;
 
+    /**
+     * 流式解析log，值在访问时才解码，仅对eth_getLogs有效
+     */
+    @Setter
+    private boolean lazyDecode;
+
     /**
      * 出块间隔(ms)
      */
@@ -132,6 +190,16 @@ public class LogEventScanner implements Runnable {
      */
     private CurrentBlockProvider currentBlockProvider;
 
+    /**
+     * 块高提供者是否主动通知新块（例如 newHeads 订阅）
+     */
+    private boolean pushHeads;
+
+    /**
+     * 解除和块高提供者的绑定
+     */
+    private volatile Runnable unbindHeads;
+
     /**
      * 统计平均出块间隔，计算滑动平均值(ms)
      * -- GETTER --
@@ -162,6 +230,56 @@ public class LogEventScanner implements Runnable {
      */
     private final long retryInterval;
 
+    /**
+     * 追块时并行的窗口数，小于2时不启用追块模式
+     */
+    @Setter
+    private int catchUpParallel;
+
+    /**
+     * 距离当前高度小于该值时回到逐窗口扫描
+     */
+    @Setter
+    private long catchUpDistance = 1024;
+
+    /**
+     * 下一个待扫描的高度
+     * -- GETTER --
+     * 扫描进度
+     *
+     * @return
+     */
+    @Getter
+    private volatile long position;
+
+    /**
+     * 动态步长
+     */
+    private long adaptiveStep = 1;
+
+    /**
+     * 步长控制
+     */
+    @Setter
+    private StepController stepController = new DefaultStepController();
+
+    /**
+     * 确认数，只扫描到 current - confirmations
+     */
+    @Setter
+    private long confirmations;
+
+    /**
+     * 最近已通知窗口末块的hash，为null时不检测分叉
+     */
+    private BlockHashRing recentHashes;
+
+    /**
+     * 进度存储，from小于0时从这里恢复
+     */
+    @Setter
+    private CheckpointStore checkpointStore;
+
     /**
      * log event scanner
      *
@@ -199,7 +317,6 @@ public class LogEventScanner implements Runnable {
         this.pendingMaxDelay = pendingMaxDelay <= 0 ? blockInterval : pendingMaxDelay;
         this.pendingParallel = pendingParallel;
         this.pendingBatchSize = pendingBatchSize <= 0 ? 1 : pendingBatchSize;
-        this.pendingQueue = new LinkedBlockingDeque<>();
     }
 
     /**
@@ -230,18 +347,37 @@ public class LogEventScanner implements Runnable {
             };
         }
         this.currentBlockProvider = currentBlockProvider;
+        if (unbindHeads != null) {
+            unbindHeads.run();
+        }
+        this.unbindHeads = currentBlockProvider.bind(this::signalHead);
+        this.pushHeads = unbindHeads != null;
         this.sensitivity = sensitivity <= 0 || sensitivity >= 1 ? 1.0 / 4 : sensitivity;
         this.averageBlockInterval = blockInterval * 1000;
         if (!scanning) {
+            if (from < 0 && checkpointStore != null) {
+                try {
+                    long h = checkpointStore.load();
+                    if (h >= 0) {
+                        from = h + 1;
+                        log.info("resume scanning from checkpoint {}", h);
+                    }
+                } catch (IOException ex) {
+                    log.error("load checkpoint error", ex);
+                }
+            }
             scanning = true;
             this.events = events;
             this.from = from;
             this.step = step;
+            this.adaptiveStep = Math.max(stepController.initial(), 1);
             this.contracts = contracts;
+            this.eventSet = EventSet.of(events, contracts);
             // 尝试启动pending
             if (pendingInterval > 0) {
                 startPending();
             }
+            signal.reset();
             Thread thread = new Thread(this);
             thread.setName("thread - event");
             thread.start();
@@ -249,28 +385,27 @@ public class LogEventScanner implements Runnable {
         return scanning;
     }
 
-    /**
-     * lock for pending txs
-     */
-    private static final Object PX_LOCK = new Object();
-
     /**
      * 尝试启动pending
      */
     public void startPending() {
         if (!pending) {
+            PendingHashQueue queue = new PendingHashQueue(pendingCapacity, pendingOverflow);
+            SeenHashes seen = pendingSeenWindow > 0 ? new SeenHashes(pendingCapacity, pendingSeenWindow) : null;
+            pendingQueue = queue;
             pending = true;
             Runnable run = () -> {
                 try {
                     Flowable<PendingTransactionNotification> f = pxWeb3j.newPendingTransactionsNotifications();
                     f.blockingForEach(item -> {
                         String hash = item.getParams().getResult();
+                        long now = System.currentTimeMillis();
+                        if (seen != null && !seen.add(hash, now)) {
+                            return;
+                        }
                         boolean processed = this.listener.onPendingTransactionHash(hash, this.current, this.currentTime);
-                        if (!processed) {
-                            pendingQueue.offer(new PendingHash(hash, System.currentTimeMillis(), true));
-                            synchronized (PX_LOCK) {
-                                PX_LOCK.notifyAll();
-                            }
+                        if (!processed && queue.offer(new PendingHash(hash, now, true))) {
+                            signal.signalPending();
                         }
                     });
                 } catch (WebsocketNotConnectedException ex) {
@@ -296,20 +431,52 @@ public class LogEventScanner implements Runnable {
         this.pending = false;
     }
 
+    /**
+     * 通知有新块，提前结束等待去取当前高度（例如 newHeads 订阅）
+     */
+    public void signalHead() {
+        signal.signalHead();
+    }
+
+    /**
+     * 开启分叉检测，保留最近windows个已通知窗口末块的hash
+     * <p>
+     * 能回滚的深度是windows个窗口（步长为1时即windows个块），回滚的粒度是窗口；
+     * 开启后每个窗口多2次取块头的请求（窗口只有一个块时1次）
+     *
+     * @param windows 小于等于0时关闭
+     */
+    public void setReorgDepth(int windows) {
+        this.recentHashes = windows > 0 ? new BlockHashRing(windows) : null;
+    }
+
     /**
      * stop scan
      */
     public void stop() {
         this.scanning = false;
         this.pending = false;
+        Runnable unbind = unbindHeads;
+        if (unbind != null) {
+            unbindHeads = null;
+            unbind.run();
+        }
+        signal.wakeAll();
     }
 
     /**
+     * chain id，第一次成功获取后缓存
+     *
      * @return
      */
     public BigInteger chainId() throws IOException {
-        EthChainId cd = web3j.ethChainId().send();
-        return cd.getChainId();
+        BigInteger id = chainId;
+        if (id == null) {
+            EthChainId cd = web3j.ethChainId().send();
+            id = cd.getChainId();
+            chainId = id;
+        }
+        return id;
     }
 
 
@@ -336,68 +503,52 @@ public class LogEventScanner implements Runnable {
             throw new RuntimeException(ex);
         }
         from = from < 0 ? current : from; // from
-        long step = 1;    // 步长
-        long f = from;    // 起始位置
+        position = from;    // 起始位置
         while (scanning) {
+            // 落后较多时并行追块
+            if (catchUpParallel > 1 && confirmed() - position > catchUpDistance) {
+                catchUp();
+                if (recentHashes != null) {
+                    recentHashes.clear();
+                }
+            }
             if (this.step > 0) {
-                step = this.step;
+                adaptiveStep = this.step;
             }
-            long t = Math.min(f + step - 1, current);
+            long f = position;
+            long t = Math.min(f + adaptiveStep - 1, confirmed());
             if (f <= t) {
-                List<LogEvent> les = null;
-                int retry = 0;
-                int maxRetry = this.maxRetry;
-                while ((les == null || les.isEmpty()) && (retry <= 0 || retry <= maxRetry)) {
+                String hash = null;
+                if (recentHashes != null) {
                     try {
-                        les = EthContractUtil.getLogEvents(web3j, f, t, events, contracts, logFromTx);
-                        if (les.isEmpty()) {
-                            retry++;
-                            if (retry <= maxRetry) {
-                                try {
-                                    Thread.sleep(retryInterval);
-                                } catch (Exception x) {
-                                }
-                            }
-                        } else if (retry > 0) { // retry 后成功
-                            log.info("fetch {} logs success from {} to {} with {} retry", les.size(), f, t, retry);
+                        hash = checkReorg(f, t);
+                        if (hash == null) {
+                            continue; // 已回滚，立即重新扫描
                         }
                     } catch (Throwable ex) {
-                        retry++;
-                        maxRetry = Math.max(this.maxRetry, 1);
-                        log.error("fetch logs error from {} to {} with {} retry", f, t, retry);
+                        log.error("fetch block hash error from {} to {}", f, t, ex);
                         listener.onError(ex, f, t, current, currentTime);
-                        step = 1;
-                        if (retry <= maxRetry) {
-                            try {
-                                Thread.sleep(retryInterval);
-                            } catch (Exception x) {
-                            }
-                        }
                     }
                 }
-                les = les == null ? Collections.EMPTY_LIST : les;
-                long logSize = les.size();  // 用来调整步长
-                if (logSize > 0 && listener.reverse()) {
-                    Collections.reverse(les);
+                if (recentHashes == null || hash != null) {
+                    if (!deliver(fetch(f, t))) {
+                        // 重试都失败，不前进也不提交，等一下重扫这个窗口
+                        try {
+                            Thread.sleep(retryInterval);
+                        } catch (InterruptedException ex) {
+                            log.error("retry wait interrupted", ex);
+                        }
+                        continue;
+                    }
+                    if (hash != null) {
+                        recentHashes.put(t, hash);
+                    }
                 }
-
-                // 通知
-                listener.onLogEvents(les, f, t, current, currentTime);
-                listener.onOnceScanOver(f, t, current, currentTime, logSize);
-
-                f = t + 1;
-
-                // step adjust
-                long targetSize = 1024 * 4;
-                long maxStep = 1024;
-                long rate = 60;
-                step = logSize > 0 ? ((step * targetSize / logSize) * rate + step * (100 - rate)) / 100 : step + 1;
-                step = step < 1 ? 1 : (Math.min(step, maxStep));
             }
             // reach 't' height
             else {
                 listener.onReachHighest(t);
-                step = 1;
+                adaptiveStep = 1;
             }
             long next = currentTime * 1000 + blockInterval; // 下次出块时间
             if (pendingInterval >= 0) {
@@ -410,27 +561,29 @@ public class LogEventScanner implements Runnable {
                     long now = System.currentTimeMillis();
                     if (now < next) {
                         long maxSleep = next - now;
-                        synchronized (PX_LOCK) {
-                            try {
-                                PX_LOCK.wait(maxSleep);
-                            } catch (Throwable th) {
-                                log.error("PX_LOCK wait error", th);
-                            }
+                        try {
+                            signal.awaitPending(maxSleep);
+                        } catch (InterruptedException ex) {
+                            log.error("pending wait interrupted", ex);
                         }
                     }
-                } while (System.currentTimeMillis() - next + blockInterval < pendingMaxDelay);
+                } while (scanning && !signal.hasHead() && System.currentTimeMillis() - next + blockInterval < pendingMaxDelay);
             }
-            // 等待下一个块到来
+            // 等待下一个块到来，主动通知新块时等到通知为止（最多多等一个出块间隔）
             long delta = next - System.currentTimeMillis();
+            if (pushHeads) {
+                delta = Math.max(delta, blockInterval);
+            }
             if (delta > 0) {
-                synchronized (PX_LOCK) {
-                    try {
-                        PX_LOCK.wait(delta);
-                    } catch (Throwable th) {
-                        log.error("PX_LOCK wait error", th);
-                    }
+                try {
+                    signal.awaitHead(delta);
+                } catch (InterruptedException ex) {
+                    log.error("head wait interrupted", ex);
                 }
             }
+            if (!scanning) {
+                break;
+            }
             // 求当前最高块
             try {
                 long[] c = this.currentBlockProvider.currentBlockNumberAndTimestamp();
@@ -449,6 +602,261 @@ public class LogEventScanner implements Runnable {
                 log.error("fetch the current block number and timestamp failed", e);
             }
         }
+        if (ownPendingExecutor) {
+            pendingExecutor.close();
+            pendingExecutor = null;
+            ownPendingExecutor = false;
+        }
+        if (checkpointStore != null) {
+            try {
+                checkpointStore.flush();
+            } catch (IOException ex) {
+                log.error("flush checkpoint error", ex);
+            }
+        }
+    }
+
+    /**
+     * 并行追块，保持catchUpParallel个窗口在途，按顺序通知listener
+     */
+    private void catchUp() {
+        AtomicInteger index = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(catchUpParallel, r -> {
+            Thread thread = new Thread(r);
+            thread.setName("thread - catch up - " + index.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        Deque<Future<Window>> inFlight = new ArrayDeque<>(catchUpParallel);
+        long next = position;   // 下一个待提交窗口
+        try {
+            log.info("catch up from {} to {} with {} windows in flight", position, current, catchUpParallel);
+            while (scanning) {
+                long step = this.step > 0 ? this.step : adaptiveStep;
+                while (inFlight.size() < catchUpParallel && confirmed() - next > catchUpDistance) {
+                    long f = next;
+                    long t = Math.min(f + step - 1, confirmed());
+                    inFlight.add(executor.submit(() -> fetch(f, t, false)));
+                    next = t + 1;
+                }
+                Future<Window> head = inFlight.poll();
+                if (head == null) {
+                    break;
+                }
+                Window w = head.get();
+                if (!deliver(w)) {
+                    // 出错的窗口不跳过：丢弃后面在途的窗口，等一下从position用收缩后的步长重新开始
+                    log.warn("catch up window from {} to {} failed, retry with step {}", w.from, w.to, adaptiveStep);
+                    inFlight.forEach(item -> item.cancel(true));
+                    inFlight.clear();
+                    next = position;
+                    Thread.sleep(retryInterval);
+                    continue;
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            log.error("catch up interrupted at {}", position, ex);
+        } catch (Throwable ex) {
+            log.error("catch up error at {}", position, ex);
+        } finally {
+            // 未通知的窗口丢弃，从position继续
+            inFlight.forEach(item -> item.cancel(true));
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * 已确认的最高块
+     *
+     * @return
+     */
+    private long confirmed() {
+        return current - confirmations;
+    }
+
+    /**
+     * 检查[f, t]是否接在已通知的链上，发现分叉时回滚到共同祖先之后
+     * <p>
+     * 取f和t的块头（f == t时只取一次）；共同祖先在已记录的窗口末块中找，找不到时从记录的最旧窗口末块开始重新扫描
+     *
+     * @param f
+     * @param t
+     * @return t的hash，发生回滚时返回null
+     * @throws IOException
+     */
+    private String checkReorg(long f, long t) throws IOException {
+        EthBlock.Block tb = header(t);
+        String parent = f == t ? tb.getParentHash() : header(f).getParentHash();
+        String expected = recentHashes.get(f - 1);
+        if (expected == null || expected.equalsIgnoreCase(parent)) {
+            return tb.getHash();
+        }
+        // 向前找共同祖先
+        long ancestor = recentHashes.oldest() - 1;
+        for (int i = 0; i < recentHashes.size(); i++) {
+            long h = recentHashes.height(i);
+            if (recentHashes.hash(i).equalsIgnoreCase(header(h).getHash())) {
+                ancestor = h;
+                break;
+            }
+        }
+        long rf = ancestor + 1;
+        long rt = f - 1;
+        log.warn("chain reorganized, rollback from {} to {}", rf, rt);
+        recentHashes.truncate(ancestor);
+        position = rf;
+        listener.onRollback(rf, rt, current, currentTime);
+        checkpoint(ancestor);
+        return null;
+    }
+
+    /**
+     * 提交进度
+     *
+     * @param h
+     */
+    private void checkpoint(long h) {
+        if (checkpointStore != null) {
+            try {
+                checkpointStore.commit(h);
+            } catch (IOException ex) {
+                log.error("commit checkpoint {} error", h, ex);
+            }
+        }
+    }
+
+    /**
+     * 块头
+     *
+     * @param h
+     * @return
+     * @throws IOException
+     */
+    private EthBlock.Block header(long h) throws IOException {
+        EthBlock block = web3j.ethGetBlockByNumber(DefaultBlockParameter.valueOf(BigInteger.valueOf(h)), false).send();
+        if (block.getBlock() == null) {
+            throw new IOException("block " + h + " not found");
+        }
+        return block.getBlock();
+    }
+
+    /**
+     * 获取[f, t]上的事件，失败重试
+     *
+     * @param f
+     * @param t
+     * @return
+     */
+    private Window fetch(long f, long t) {
+        return fetch(f, t, true);
+    }
+
+    /**
+     * 获取[f, t]上的事件
+     *
+     * @param f
+     * @param t
+     * @param retrying 是否在当前线程重试（包括空结果）；追块时为false，空窗口直接通过，出错由追块线程处理
+     * @return
+     */
+    private Window fetch(long f, long t, boolean retrying) {
+        List<LogEvent> les = null;
+        Throwable error = null;
+        long latency = 0;
+        long bytes = -1;
+        int retry = 0;
+        int maxRetry = retrying ? this.maxRetry : 0;
+        while ((les == null || retrying && les.isEmpty()) && (retry <= 0 || retry <= maxRetry)) {
+            try {
+                EuHttpService.resetResponseBytes();
+                long begin = System.currentTimeMillis();
+                les = lazyDecode && !logFromTx ? EthContractUtil.getLazyLogEvents(web3j, f, t, eventSet) : EthContractUtil.getLogEvents(web3j, f, t, eventSet, logFromTx);
+                latency = System.currentTimeMillis() - begin;
+                error = null;   // 重试成功
+                bytes = logFromTx || EuHttpService.responseBytes() == 0 ? -1 : EuHttpService.responseBytes();
+                if (les.isEmpty() && retrying) {
+                    retry++;
+                    if (retry <= maxRetry) {
+                        try {
+                            Thread.sleep(retryInterval);
+                        } catch (Exception x) {
+                        }
+                    }
+                } else if (retry > 0) { // retry 后成功
+                    log.info("fetch {} logs success from {} to {} with {} retry", les.size(), f, t, retry);
+                }
+            } catch (Throwable ex) {
+                retry++;
+                maxRetry = retrying ? Math.max(this.maxRetry, 1) : 0;
+                log.error("fetch logs error from {} to {} with {} retry", f, t, retry);
+                listener.onError(ex, f, t, current, currentTime);
+                error = ex;
+                if (retry <= maxRetry) {
+                    try {
+                        Thread.sleep(retryInterval);
+                    } catch (Exception x) {
+                    }
+                }
+            }
+        }
+        return new Window(f, t, les, error, latency, bytes);
+    }
+
+    /**
+     * 通知listener并调整步长
+     *
+     * @param w
+     * @return 全部尝试都失败时为false，此时不通知、不提交进度、position不变
+     */
+    private boolean deliver(Window w) {
+        if (w.events == null) {
+            adaptiveStep = Math.max(stepController.onError(adaptiveStep, w.error), 1);
+            return false;
+        }
+        List<LogEvent> les = w.events;
+        long logSize = les.size();  // 用来调整步长
+        if (logSize > 0 && listener.reverse()) {
+            Collections.reverse(les);
+        }
+
+        // 通知
+        listener.onLogEvents(les, w.from, w.to, current, currentTime);
+        listener.onOnceScanOver(w.from, w.to, current, currentTime, logSize);
+        checkpoint(w.to);
+
+        position = w.to + 1;
+
+        // step adjust
+        adaptiveStep = Math.max(stepController.onSuccess(adaptiveStep, logSize, w.bytes, w.latency), 1);
+        return true;
+    }
+
+    /**
+     * 一次扫描的窗口
+     */
+    private static class Window {
+        private final long from;
+        private final long to;
+        /**
+         * 全部尝试都失败时为null
+         */
+        private final List<LogEvent> events;
+        /**
+         * 全部尝试都失败时的最后一次错误，成功时为null
+         */
+        private final Throwable error;
+        private final long latency;
+        private final long bytes;
+
+        private Window(long from, long to, List<LogEvent> events, Throwable error, long latency, long bytes) {
+            this.from = from;
+            this.to = to;
+            this.events = events;
+            this.error = error;
+            this.latency = latency;
+            this.bytes = bytes;
+        }
     }
 
     private BigInteger fid;
@@ -459,17 +867,15 @@ public class LogEventScanner implements Runnable {
      * @return
      */
     private List<PendingTransaction> pendingTxs() {
-        if (pending) {
-            Map<String, PendingHash> hash = new HashMap<>();
-            while (!pendingQueue.isEmpty()) {
-                PendingHash ph = pendingQueue.remove();
-                hash.put(ph.getHash().toLowerCase(), ph);
-            }
+        PendingHashQueue queue = pendingQueue;
+        if (pending && queue != null) {
+            signal.clearPending();
+            Map<String, PendingHash> hash = new HashMap<>(Math.max(16, queue.size() * 4 / 3 + 1));
+            queue.drain(ph -> hash.put(lower(ph.getHash()), ph));
             if (!hash.isEmpty()) {
-                List<org.web3j.protocol.core.methods.response.Transaction> txs = EthContractUtil.pendingTransactions(pxWeb3j, new ArrayList<>(hash.keySet()), pendingParallel <= 0 ? 3 : pendingParallel, pendingBatchSize);
+                List<org.web3j.protocol.core.methods.response.Transaction> txs = EthContractUtil.pendingTransactions(pxWeb3j, new ArrayList<>(hash.keySet()), pendingExecutor(), pendingBatchSize);
                 return txs.stream().map(item -> {
-                    String h = item.getHash().toLowerCase();
-                    PendingHash ph = hash.get(h);
+                    PendingHash ph = hash.get(lower(item.getHash()));
                     if (ph == null) {
                         return new PendingTransaction(item, System.currentTimeMillis(), true);
                     } else {
@@ -484,7 +890,7 @@ public class LogEventScanner implements Runnable {
                 if (fid == null) {
                     fid = EthContractUtil.newPendingTransactionFilterId(web3j);
                 }
-                return EthContractUtil.pendingTransactions(web3j, fid, pendingParallel <= 0 ? 3 : pendingParallel, pendingBatchSize);
+                return EthContractUtil.pendingTransactions(web3j, fid, pendingExecutor(), pendingBatchSize);
             } catch (Exception ex) {
                 log.error("fetch pending transactions error", ex);
                 fid = null;
@@ -493,6 +899,34 @@ public class LogEventScanner implements Runnable {
         }
     }
 
+    /**
+     * pending executor
+     *
+     * @return
+     */
+    private BatchExecutor pendingExecutor() {
+        if (pendingExecutor == null) {
+            pendingExecutor = BatchExecutor.virtual("pending", pendingParallel <= 0 ? 3 : pendingParallel);
+            ownPendingExecutor = true;
+        }
+        return pendingExecutor;
+    }
+
+    /**
+     * 节点返回的hash一般已是小写，避免重复分配
+     *
+     * @param hash
+     * @return
+     */
+    private static String lower(String hash) {
+        for (int i = 0; i < hash.length(); i++) {
+            if (Character.isUpperCase(hash.charAt(i))) {
+                return hash.toLowerCase();
+            }
+        }
+        return hash;
+    }
+
     /**
      * 重新连接
      */
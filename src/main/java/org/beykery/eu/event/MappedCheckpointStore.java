@@ -0,0 +1,191 @@
+package org.beykery.eu.event;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * 基于内存映射文件的进度存储
+ * <p>
+ * 每次提交追加一条16字节记录(height, 校验)，load时取最后一条完整记录；
+ * 进程崩溃不丢数据，按syncEvery/syncInterval批量fsync防止系统崩溃丢失
+ */
+@Slf4j
+public class MappedCheckpointStore implements CheckpointStore {
+
+    /**
+     * 记录长度
+     */
+    private static final int RECORD = 16;
+
+    /**
+     * 校验
+     */
+    private static final long MAGIC = 0x6575636b70740000L;
+
+    /**
+     * 每次扩展的记录数
+     */
+    private static final int SEGMENT = 4096;
+
+    /**
+     * 文件最大记录数，超过后压缩为一条
+     */
+    private static final int MAX_RECORDS = SEGMENT * 256;
+
+    /**
+     * file
+     */
+    private final Path file;
+
+    /**
+     * 多少次提交fsync一次
+     */
+    private final int syncEvery;
+
+    /**
+     * 最长多久fsync一次(ms)
+     */
+    private final long syncInterval;
+
+    private FileChannel channel;
+
+    private MappedByteBuffer buffer;
+
+    /**
+     * 写入位置
+     */
+    private int offset;
+
+    /**
+     * 最后提交的高度
+     */
+    private long last = -1;
+
+    /**
+     * 未落盘的提交数
+     */
+    private int dirty;
+
+    /**
+     * 上次落盘时间
+     */
+    private long lastSync;
+
+    /**
+     * 每次提交都fsync
+     *
+     * @param file
+     * @throws IOException
+     */
+    public MappedCheckpointStore(Path file) throws IOException {
+        this(file, 1, 0);
+    }
+
+    /**
+     * @param file         文件
+     * @param syncEvery    多少次提交fsync一次
+     * @param syncInterval 最长多久fsync一次(ms)，小于等于0时只按次数
+     * @throws IOException
+     */
+    public MappedCheckpointStore(Path file, int syncEvery, long syncInterval) throws IOException {
+        this.file = file;
+        this.syncEvery = Math.max(syncEvery, 1);
+        this.syncInterval = syncInterval;
+        open();
+        while (offset + RECORD <= buffer.capacity()) {
+            long h = buffer.getLong(offset);
+            if (buffer.getLong(offset + 8) != check(h)) {
+                break;
+            }
+            last = h;
+            offset += RECORD;
+        }
+        lastSync = System.currentTimeMillis();
+    }
+
+    @Override
+    public synchronized long load() {
+        return last;
+    }
+
+    @Override
+    public synchronized void commit(long height) throws IOException {
+        if (offset + RECORD > buffer.capacity()) {
+            grow();
+        }
+        buffer.putLong(offset, height);
+        buffer.putLong(offset + 8, check(height));
+        offset += RECORD;
+        last = height;
+        dirty++;
+        long now = System.currentTimeMillis();
+        if (dirty >= syncEvery || (syncInterval > 0 && now - lastSync >= syncInterval)) {
+            flush();
+        }
+    }
+
+    @Override
+    public synchronized void flush() {
+        if (dirty > 0) {
+            buffer.force();
+            dirty = 0;
+        }
+        lastSync = System.currentTimeMillis();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (channel != null) {
+            flush();
+            channel.close();
+            channel = null;
+        }
+    }
+
+    /**
+     * 打开并映射整个文件，至少一个segment
+     *
+     * @throws IOException
+     */
+    private void open() throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long size = Math.max(channel.size(), (long) SEGMENT * RECORD);
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+    }
+
+    /**
+     * 扩展文件，超过上限时压缩为最后一条记录
+     *
+     * @throws IOException
+     */
+    private void grow() throws IOException {
+        buffer.force();
+        if (buffer.capacity() / RECORD >= MAX_RECORDS) {
+            Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+            try (FileChannel tc = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                MappedByteBuffer tb = tc.map(FileChannel.MapMode.READ_WRITE, 0, (long) SEGMENT * RECORD);
+                tb.putLong(0, last);
+                tb.putLong(8, check(last));
+                tb.force();
+            }
+            channel.close();
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            open();
+            offset = RECORD;
+            log.info("checkpoint {} compacted at {}", file, last);
+        } else {
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, buffer.capacity() + (long) SEGMENT * RECORD);
+        }
+    }
+
+    private static long check(long height) {
+        return ~height ^ MAGIC;
+    }
+}
@@ -0,0 +1,235 @@
+package org.beykery.eu.event;
+
+import io.reactivex.disposables.Disposable;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+import org.web3j.protocol.Web3j;
+import org.web3j.protocol.core.DefaultBlockParameterName;
+import org.web3j.protocol.core.methods.response.EthBlock;
+import org.web3j.protocol.websocket.events.NewHead;
+import org.web3j.utils.Numeric;
+
+import java.io.Closeable;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 基于 newHeads 订阅的块高提供者
+ * <p>
+ * 收到新块立即唤醒 scanner，取块高不再发请求；订阅断开或超过 staleAfter 没有新块时退回轮询 latest，并定期尝试重新订阅
+ */
+@Slf4j
+public class NewHeadsBlockProvider implements CurrentBlockProvider, Closeable {
+
+    /**
+     * 订阅用的 web3j（websocket）
+     */
+    private final Web3j web3j;
+
+    /**
+     * 轮询用的 web3j，可以和订阅的相同
+     */
+    private final Web3j pollWeb3j;
+
+    private final ScheduledExecutorService scheduler;
+
+    /**
+     * 绑定的 scanner
+     */
+    private final List<Runnable> onNewHeads = new CopyOnWriteArrayList<>();
+
+    /**
+     * 超过该时间(ms)没有收到新块视为订阅失效
+     */
+    @Setter
+    private long staleAfter;
+
+    /**
+     * 退回轮询时的间隔(ms)
+     */
+    @Setter
+    private long pollInterval;
+
+    /**
+     * 通过订阅收到的新块数
+     */
+    @Getter
+    private final AtomicLong pushed = new AtomicLong();
+
+    /**
+     * 轮询请求数
+     */
+    @Getter
+    private final AtomicLong polled = new AtomicLong();
+
+    /**
+     * 0: block number ; 1: block timestamp
+     */
+    private volatile long[] head;
+    private volatile long lastPush;
+    private volatile long lastSubscribe;
+    private volatile boolean supported = true;
+    private volatile Disposable subscription;
+    private volatile boolean closed;
+
+    /**
+     * @param web3j         订阅用的 web3j（websocket）
+     * @param pollWeb3j     轮询用的 web3j，为null时使用web3j
+     * @param blockInterval 出块间隔(ms)
+     */
+    public NewHeadsBlockProvider(Web3j web3j, Web3j pollWeb3j, long blockInterval) {
+        this.web3j = web3j;
+        this.pollWeb3j = pollWeb3j == null ? web3j : pollWeb3j;
+        this.staleAfter = blockInterval * 3;
+        this.pollInterval = Math.max(blockInterval / 4, 100);
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r);
+            t.setName("thread - new heads");
+            t.setDaemon(true);
+            return t;
+        });
+        subscribe();
+        scheduler.schedule(this::watch, this.pollInterval, TimeUnit.MILLISECONDS);
+    }
+
+    public NewHeadsBlockProvider(Web3j web3j, long blockInterval) {
+        this(web3j, null, blockInterval);
+    }
+
+    @Override
+    public Runnable bind(Runnable onNewHead) {
+        if (!supported) {
+            return null;
+        }
+        onNewHeads.add(onNewHead);
+        return () -> onNewHeads.remove(onNewHead);
+    }
+
+    /**
+     * 绑定的数量
+     *
+     * @return
+     */
+    public int bindings() {
+        return onNewHeads.size();
+    }
+
+    @Override
+    public long[] currentBlockNumberAndTimestamp() throws Exception {
+        long[] h = head;
+        if (h == null || !isLive()) {
+            h = poll();
+        }
+        return h;
+    }
+
+    /**
+     * 订阅是否在正常推送：当前订阅已经推送过新块，且最近一次推送在staleAfter内
+     * <p>
+     * 刚（重新）订阅、还没收到推送时不算，此时按pollInterval轮询
+     *
+     * @return
+     */
+    public boolean isLive() {
+        long push = lastPush;
+        return subscription != null && push >= lastSubscribe && push > 0 && System.currentTimeMillis() - push <= staleAfter;
+    }
+
+    private void subscribe() {
+        if (closed || !supported) {
+            return;
+        }
+        lastSubscribe = System.currentTimeMillis();
+        try {
+            subscription = web3j.newHeadsNotifications().subscribe(
+                    n -> onHead(n.getParams().getResult()),
+                    ex -> {
+                        log.warn("new heads subscription broken : {}, fall back to polling", ex.getMessage());
+                        subscription = null;
+                    },
+                    () -> subscription = null
+            );
+        } catch (UnsupportedOperationException ex) {
+            log.warn("new heads subscription not supported, polling only");
+            supported = false;
+            subscription = null;
+        } catch (Exception ex) {
+            log.warn("new heads subscription failed : {}, fall back to polling", ex.getMessage());
+            subscription = null;
+        }
+    }
+
+    private void onHead(NewHead h) {
+        lastPush = System.currentTimeMillis();
+        pushed.incrementAndGet();
+        update(Numeric.decodeQuantity(h.getNumber()).longValue(), Numeric.decodeQuantity(h.getTimestamp()).longValue());
+    }
+
+    private long[] poll() throws Exception {
+        polled.incrementAndGet();
+        EthBlock block = pollWeb3j.ethGetBlockByNumber(DefaultBlockParameterName.LATEST, false).send();
+        update(block.getBlock().getNumber().longValue(), block.getBlock().getTimestamp().longValue());
+        return head;
+    }
+
+    /**
+     * 块高前进时更新并通知
+     */
+    private void update(long number, long timestamp) {
+        boolean advanced;
+        synchronized (this) {
+            long[] h = head;
+            advanced = h == null || number > h[0];
+            if (advanced) {
+                head = new long[]{number, timestamp};
+            }
+        }
+        if (advanced) {
+            onNewHeads.forEach(Runnable::run);
+        }
+    }
+
+    /**
+     * 订阅失效时轮询，并重新订阅
+     */
+    private void watch() {
+        if (closed) {
+            return;
+        }
+        try {
+            if (!isLive()) {
+                // 推送中断，或重新订阅后staleAfter内一直没有推送，换一个订阅
+                if (System.currentTimeMillis() - Math.max(lastPush, lastSubscribe) >= staleAfter) {
+                    Disposable d = subscription;
+                    if (d != null) {
+                        d.dispose();
+                        subscription = null;
+                    }
+                    subscribe();
+                }
+                poll();
+            }
+        } catch (Throwable ex) {
+            log.error("poll latest block error", ex);
+        } finally {
+            if (!closed) {
+                scheduler.schedule(this::watch, pollInterval, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        scheduler.shutdownNow();
+        Disposable d = subscription;
+        if (d != null) {
+            d.dispose();
+        }
+    }
+}
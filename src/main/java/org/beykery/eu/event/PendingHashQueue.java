@@ -0,0 +1,157 @@
+package org.beykery.eu.event;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Consumer;
+
+/**
+ * 有界无锁环形队列（Vyukov），用于 pending hash 的接收
+ * <p>
+ * 多生产者安全，满时按 {@link OverflowPolicy} 丢弃
+ */
+public class PendingHashQueue {
+
+    /**
+     * 队列满时的处理
+     */
+    public enum OverflowPolicy {
+        /**
+         * 丢弃新来的
+         */
+        DROP_NEWEST,
+        /**
+         * 丢弃最老的
+         */
+        DROP_OLDEST
+    }
+
+    private final PendingHash[] cells;
+    private final AtomicLongArray sequences;
+    private final int mask;
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final OverflowPolicy policy;
+
+    /**
+     * @param capacity 容量，向上取2的幂
+     * @param policy   满时的处理
+     */
+    public PendingHashQueue(int capacity, OverflowPolicy policy) {
+        int c = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+        this.cells = new PendingHash[c];
+        this.sequences = new AtomicLongArray(c);
+        for (int i = 0; i < c; i++) {
+            sequences.set(i, i);
+        }
+        this.mask = c - 1;
+        this.policy = policy == null ? OverflowPolicy.DROP_OLDEST : policy;
+    }
+
+    /**
+     * 入队，满时按策略丢弃
+     *
+     * @param ph
+     * @return 是否入队
+     */
+    public boolean offer(PendingHash ph) {
+        while (!tryOffer(ph)) {
+            if (policy == OverflowPolicy.DROP_NEWEST) {
+                dropped.incrementAndGet();
+                return false;
+            }
+            if (poll() != null) {
+                dropped.incrementAndGet();
+            }
+        }
+        return true;
+    }
+
+    private boolean tryOffer(PendingHash ph) {
+        long pos = tail.get();
+        while (true) {
+            int idx = (int) (pos & mask);
+            long dif = sequences.get(idx) - pos;
+            if (dif == 0) {
+                if (tail.compareAndSet(pos, pos + 1)) {
+                    cells[idx] = ph;
+                    sequences.set(idx, pos + 1);
+                    return true;
+                }
+                pos = tail.get();
+            } else if (dif < 0) {
+                return false;
+            } else {
+                pos = tail.get();
+            }
+        }
+    }
+
+    /**
+     * 出队
+     *
+     * @return 空时返回null
+     */
+    public PendingHash poll() {
+        long pos = head.get();
+        while (true) {
+            int idx = (int) (pos & mask);
+            long dif = sequences.get(idx) - (pos + 1);
+            if (dif == 0) {
+                if (head.compareAndSet(pos, pos + 1)) {
+                    PendingHash ph = cells[idx];
+                    cells[idx] = null;
+                    sequences.set(idx, pos + mask + 1);
+                    return ph;
+                }
+                pos = head.get();
+            } else if (dif < 0) {
+                return null;
+            } else {
+                pos = head.get();
+            }
+        }
+    }
+
+    /**
+     * 取出当前所有元素
+     *
+     * @param consumer
+     * @return 取出的个数
+     */
+    public int drain(Consumer<PendingHash> consumer) {
+        int n = 0;
+        PendingHash ph;
+        while ((ph = poll()) != null) {
+            consumer.accept(ph);
+            n++;
+        }
+        return n;
+    }
+
+    /**
+     * 近似大小
+     *
+     * @return
+     */
+    public int size() {
+        return (int) Math.max(0, Math.min(tail.get() - head.get(), cells.length));
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    public int capacity() {
+        return cells.length;
+    }
+
+    /**
+     * 因队列满丢弃的个数
+     *
+     * @return
+     */
+    public long dropped() {
+        return dropped.get();
+    }
+}
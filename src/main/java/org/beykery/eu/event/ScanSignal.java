@@ -0,0 +1,129 @@
+package org.beykery.eu.event;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 每个 scanner 独立的唤醒信号，"新块" 和 "新 pending" 分开
+ * <p>
+ * pending 信号在被取走（{@link #clearPending()}）前只唤醒一次，生产者的快路径无锁
+ */
+class ScanSignal {
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition headArrived = lock.newCondition();
+    private final Condition pendingArrived = lock.newCondition();
+    private final AtomicBoolean head = new AtomicBoolean();
+    private final AtomicBoolean pending = new AtomicBoolean();
+    private volatile boolean stopped;
+
+    /**
+     * 新块
+     */
+    void signalHead() {
+        if (head.compareAndSet(false, true)) {
+            lock.lock();
+            try {
+                headArrived.signalAll();
+                pendingArrived.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * 新 pending，已有未取走的信号时直接返回
+     */
+    void signalPending() {
+        if (pending.compareAndSet(false, true)) {
+            lock.lock();
+            try {
+                pendingArrived.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * 取走 pending 信号，在取队列之前调用
+     */
+    void clearPending() {
+        pending.set(false);
+    }
+
+    /**
+     * 等待 pending 信号，不消费信号；有新块时也返回
+     *
+     * @param millis
+     * @throws InterruptedException
+     */
+    void awaitPending(long millis) throws InterruptedException {
+        long nanos = TimeUnit.MILLISECONDS.toNanos(millis);
+        lock.lock();
+        try {
+            while (!stopped && !pending.get() && !head.get() && nanos > 0) {
+                nanos = pendingArrived.awaitNanos(nanos);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 是否有未取走的新块信号
+     *
+     * @return
+     */
+    boolean hasHead() {
+        return head.get();
+    }
+
+    /**
+     * 等待新块信号并消费
+     *
+     * @param millis
+     * @return 是否被新块唤醒
+     * @throws InterruptedException
+     */
+    boolean awaitHead(long millis) throws InterruptedException {
+        return await(head, headArrived, millis);
+    }
+
+    /**
+     * 停止并唤醒所有等待者，之后的等待立即返回，直到 {@link #reset()}
+     */
+    void wakeAll() {
+        stopped = true;
+        lock.lock();
+        try {
+            headArrived.signalAll();
+            pendingArrived.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 重新启动时清除停止状态
+     */
+    void reset() {
+        stopped = false;
+    }
+
+    private boolean await(AtomicBoolean flag, Condition condition, long millis) throws InterruptedException {
+        long nanos = TimeUnit.MILLISECONDS.toNanos(millis);
+        lock.lock();
+        try {
+            while (!stopped && !flag.get() && nanos > 0) {
+                nanos = condition.awaitNanos(nanos);
+            }
+            return flag.getAndSet(false);
+        } finally {
+            lock.unlock();
+        }
+    }
+}
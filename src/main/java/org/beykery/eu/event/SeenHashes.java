@@ -0,0 +1,121 @@
+package org.beykery.eu.event;
+
+import java.util.Arrays;
+
+/**
+ * 按时间窗口去重的 hash 集合，只保存 hash 的前 64 位
+ * <p>
+ * 两代 open addressing long set，当前代超过窗口时轮换；窗口内装满一半时扩容（最多到初始容量的16倍），
+ * 所以一个 hash 一般至少被记住一个窗口。超过上限的突发流量下当前代会提前轮换，此时去重是尽力而为，窗口内可能重复；
+ * 非线程安全，只在订阅线程使用
+ */
+class SeenHashes {
+
+    private long[] current;
+    private long[] previous;
+    private int size;
+    private final long window;
+    private final int maxLength;
+    private long rotated;
+
+    /**
+     * @param capacity 每代容量
+     * @param window   窗口(ms)
+     */
+    SeenHashes(int capacity, long window) {
+        int c = Integer.highestOneBit(Math.max(capacity, 8) - 1) << 2;
+        this.current = new long[c];
+        this.previous = new long[c];
+        this.window = window;
+        this.maxLength = c << 4;
+        this.rotated = System.currentTimeMillis();
+    }
+
+    /**
+     * 记录 hash
+     *
+     * @param hash 0x开头的hex
+     * @param now  当前时间(ms)
+     * @return 窗口内第一次出现时返回true
+     */
+    boolean add(String hash, long now) {
+        long key = prefix(hash);
+        if (contains(current, key) || contains(previous, key)) {
+            return false;
+        }
+        if (now - rotated >= window) {
+            rotate(now);
+        } else if (size >= current.length >> 1) {
+            if (current.length < maxLength) {
+                grow();
+            } else {
+                rotate(now);    // 突发超过上限，提前轮换
+            }
+        }
+        put(current, key);
+        size++;
+        return true;
+    }
+
+    private void rotate(long now) {
+        long[] t = previous.length == current.length ? previous : new long[current.length];
+        previous = current;
+        Arrays.fill(t, 0);
+        current = t;
+        size = 0;
+        rotated = now;
+    }
+
+    private void grow() {
+        long[] t = new long[current.length << 1];
+        for (long key : current) {
+            if (key != 0) {
+                put(t, key);
+            }
+        }
+        current = t;
+    }
+
+    private static void put(long[] table, long key) {
+        int mask = table.length - 1;
+        int i = mix(key) & mask;
+        while (table[i] != 0) {
+            i = (i + 1) & mask;
+        }
+        table[i] = key;
+    }
+
+    private static boolean contains(long[] table, long key) {
+        int mask = table.length - 1;
+        int i = mix(key) & mask;
+        long k;
+        while ((k = table[i]) != 0) {
+            if (k == key) {
+                return true;
+            }
+            i = (i + 1) & mask;
+        }
+        return false;
+    }
+
+    private static int mix(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    /**
+     * hash 的前 64 位，0 保留为空槽
+     *
+     * @param hash
+     * @return
+     */
+    static long prefix(String hash) {
+        int start = hash.startsWith("0x") || hash.startsWith("0X") ? 2 : 0;
+        int end = Math.min(hash.length(), start + 16);
+        long v = 0;
+        for (int i = start; i < end; i++) {
+            v = (v << 4) | (Character.digit(hash.charAt(i), 16) & 0xF);
+        }
+        return v == 0 ? 1 : v;
+    }
+}
@@ -0,0 +1,36 @@
+package org.beykery.eu.event;
+
+/**
+ * 扫描步长控制
+ */
+public interface StepController {
+
+    /**
+     * 初始步长
+     *
+     * @return
+     */
+    default long initial() {
+        return 1;
+    }
+
+    /**
+     * 一个窗口扫描结束后的步长
+     *
+     * @param step    当前步长
+     * @param logSize log数量
+     * @param bytes   响应字节数，未知时为-1
+     * @param latency 耗时(ms)
+     * @return 下一个窗口的步长
+     */
+    long onSuccess(long step, long logSize, long bytes, long latency);
+
+    /**
+     * 出错后的步长
+     *
+     * @param step 当前步长
+     * @param ex   错误
+     * @return 下一个窗口的步长
+     */
+    long onError(long step, Throwable ex);
+}
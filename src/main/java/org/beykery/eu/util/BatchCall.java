@@ -0,0 +1,184 @@
+package org.beykery.eu.util;
+
+import lombok.Getter;
+import org.web3j.abi.FunctionEncoder;
+import org.web3j.abi.FunctionReturnDecoder;
+import org.web3j.abi.datatypes.Function;
+import org.web3j.abi.datatypes.Type;
+import org.web3j.protocol.Web3j;
+import org.web3j.protocol.core.BatchRequest;
+import org.web3j.protocol.core.DefaultBlockParameter;
+import org.web3j.protocol.core.Request;
+import org.web3j.protocol.core.methods.request.Transaction;
+import org.web3j.protocol.core.methods.response.EthCall;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 跨合约的 eth_call batch
+ * <p>
+ * 所有调用固定在同一个块上（未指定时先取当前块高），按 maxBatchSize 分块并发发送；
+ * 单个调用或单个分块失败只影响对应的结果，不会让整个batch失败
+ */
+public class BatchCall {
+
+    /**
+     * 默认每个json-rpc batch的调用数
+     */
+    public static final int DEFAULT_MAX_BATCH_SIZE = 100;
+
+    private final Web3j web3j;
+    private final List<String> contracts = new ArrayList<>();
+    private final List<Function> functions = new ArrayList<>();
+    private int maxBatchSize = DEFAULT_MAX_BATCH_SIZE;
+    private String from = EthContractUtil.DEFAULT_FROM;
+
+    /**
+     * 指定的块高，-1表示每次执行时取当前块高
+     */
+    @Getter
+    private long block = -1;
+
+    /**
+     * 最近一次执行所在的块高，未执行时为-1
+     */
+    @Getter
+    private volatile long executedBlock = -1;
+
+    public BatchCall(Web3j web3j) {
+        this.web3j = web3j;
+    }
+
+    /**
+     * 添加调用
+     *
+     * @param contract
+     * @param function
+     * @return
+     */
+    public BatchCall add(String contract, Function function) {
+        contracts.add(contract);
+        functions.add(function);
+        return this;
+    }
+
+    /**
+     * 固定块高
+     *
+     * @param block
+     * @return
+     */
+    public BatchCall block(long block) {
+        this.block = block;
+        return this;
+    }
+
+    /**
+     * 每个json-rpc batch的调用数
+     *
+     * @param maxBatchSize
+     * @return
+     */
+    public BatchCall maxBatchSize(int maxBatchSize) {
+        this.maxBatchSize = Math.max(maxBatchSize, 1);
+        return this;
+    }
+
+    /**
+     * eth_call 的 from
+     *
+     * @param from
+     * @return
+     */
+    public BatchCall from(String from) {
+        this.from = from;
+        return this;
+    }
+
+    public int size() {
+        return functions.size();
+    }
+
+    /**
+     * 执行，结果与添加顺序一致
+     *
+     * @return
+     * @throws IOException 只在取当前块高失败时抛出
+     */
+    public List<CallResult> execute() throws IOException {
+        if (functions.isEmpty()) {
+            return Collections.EMPTY_LIST;
+        }
+        long b = block >= 0 ? block : web3j.ethBlockNumber().send().getBlockNumber().longValue();
+        executedBlock = b;
+        DefaultBlockParameter param = DefaultBlockParameter.valueOf(BigInteger.valueOf(b));
+        int n = functions.size();
+        int groups = (n + maxBatchSize - 1) / maxBatchSize;
+        List<List<CallResult>> chunks = EthContractUtil.fanOut(web3j).invokeAll(groups, g -> {
+            int start = g * maxBatchSize;
+            int end = Math.min(start + maxBatchSize, n);
+            try {
+                List<EthCall> responses;
+                if (end - start == 1) {
+                    responses = List.of(call(start, param).send());
+                } else {
+                    BatchRequest batch = web3j.newBatch();
+                    for (int i = start; i < end; i++) {
+                        batch.add(call(i, param));
+                    }
+                    responses = (List<EthCall>) batch.send().getResponses();
+                }
+                List<CallResult> results = new ArrayList<>(end - start);
+                for (int i = start; i < end; i++) {
+                    results.add(result(functions.get(i), i - start < responses.size() ? responses.get(i - start) : null));
+                }
+                return results;
+            } catch (IOException | RuntimeException ex) {
+                return failed(end - start, String.valueOf(ex.getMessage()));
+            }
+        });
+        List<CallResult> results = new ArrayList<>(n);
+        for (int g = 0; g < groups; g++) {
+            List<CallResult> chunk = chunks.get(g);
+            results.addAll(chunk != null ? chunk : failed(Math.min(maxBatchSize, n - g * maxBatchSize), "batch failed"));
+        }
+        return results;
+    }
+
+    private Request<?, EthCall> call(int i, DefaultBlockParameter param) {
+        String data = FunctionEncoder.encode(functions.get(i));
+        return web3j.ethCall(Transaction.createEthCallTransaction(from, contracts.get(i), data), param);
+    }
+
+    private static CallResult result(Function f, EthCall response) {
+        if (response == null) {
+            return new CallResult(false, Collections.EMPTY_LIST, null, "no response");
+        }
+        if (response.hasError()) {
+            return new CallResult(false, Collections.EMPTY_LIST, null, response.getError().getMessage());
+        }
+        String raw = response.getValue();
+        if (response.isReverted()) {
+            return new CallResult(false, Collections.EMPTY_LIST, raw, response.getRevertReason());
+        }
+        try {
+            List<Type> values = FunctionReturnDecoder.decode(raw, f.getOutputParameters());
+            boolean success = !values.isEmpty() || f.getOutputParameters().isEmpty();
+            return new CallResult(success, values, raw, success ? null : "empty result");
+        } catch (RuntimeException ex) {
+            return new CallResult(false, Collections.EMPTY_LIST, raw, String.valueOf(ex.getMessage()));
+        }
+    }
+
+    private static List<CallResult> failed(int n, String error) {
+        List<CallResult> results = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            results.add(new CallResult(false, Collections.EMPTY_LIST, null, error));
+        }
+        return results;
+    }
+}
@@ -0,0 +1,224 @@
+package org.beykery.eu.util;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntFunction;
+
+/**
+ * 并发执行阻塞的 rpc batch
+ * <p>
+ * 同时在途的任务不超过 parallel 个；运行在 jdk21+ 时默认使用虚拟线程，否则使用 daemon 线程池
+ */
+@Slf4j
+public class BatchExecutor implements Closeable {
+
+    /**
+     * 按并行度共享的实例，供未注入executor的调用使用
+     */
+    private static final Map<Integer, BatchExecutor> SHARED = new ConcurrentHashMap<>();
+
+    /**
+     * 名字
+     */
+    @Getter
+    private final String name;
+
+    /**
+     * 并行度
+     */
+    @Getter
+    private final int parallel;
+
+    /**
+     * 是否虚拟线程
+     */
+    @Getter
+    private final boolean virtual;
+
+    private final ExecutorService executor;
+    private final Semaphore permits;
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    /**
+     * @param name     线程名前缀
+     * @param parallel 最多同时在途的任务数
+     * @param virtual  是否尝试虚拟线程
+     */
+    public BatchExecutor(String name, int parallel, boolean virtual) {
+        this.name = name;
+        this.parallel = Math.max(parallel, 1);
+        this.permits = new Semaphore(this.parallel);
+        ExecutorService vt = virtual ? virtualExecutor() : null;
+        this.virtual = vt != null;
+        if (vt != null) {
+            this.executor = vt;
+        } else {
+            AtomicInteger index = new AtomicInteger();
+            this.executor = Executors.newFixedThreadPool(this.parallel, r -> {
+                Thread t = new Thread(r, name + " - " + index.getAndIncrement());
+                t.setDaemon(true);
+                return t;
+            });
+        }
+    }
+
+    /**
+     * 虚拟线程（不可用时退化为线程池）
+     *
+     * @param name
+     * @param parallel
+     * @return
+     */
+    public static BatchExecutor virtual(String name, int parallel) {
+        return new BatchExecutor(name, parallel, true);
+    }
+
+    /**
+     * 固定大小的线程池
+     *
+     * @param name
+     * @param parallel
+     * @return
+     */
+    public static BatchExecutor fixed(String name, int parallel) {
+        return new BatchExecutor(name, parallel, false);
+    }
+
+    /**
+     * 按并行度共享的实例
+     *
+     * @param parallel
+     * @return
+     */
+    public static BatchExecutor shared(int parallel) {
+        return SHARED.computeIfAbsent(Math.max(parallel, 1), p -> virtual("batch-" + p, p));
+    }
+
+    /**
+     * jdk21 的 Executors.newVirtualThreadPerTaskExecutor
+     *
+     * @return
+     */
+    private static ExecutorService virtualExecutor() {
+        try {
+            Method m = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) m.invoke(null);
+        } catch (ReflectiveOperationException | UnsupportedOperationException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * 并发执行 n 个任务，按下标顺序返回结果；任务抛异常时对应结果为 null
+     *
+     * @param n
+     * @param task
+     * @param <T>
+     * @return
+     */
+    public <T> List<T> invokeAll(int n, IntFunction<T> task) {
+        if (n <= 1 || parallel <= 1) {
+            List<T> ret = new ArrayList<>(n);
+            for (int i = 0; i < n; i++) {
+                ret.add(run(i, task));
+            }
+            return ret;
+        }
+        List<Future<T>> futures = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            int index = i;
+            queued.incrementAndGet();
+            futures.add(executor.submit(() -> {
+                permits.acquire();
+                queued.decrementAndGet();
+                try {
+                    return run(index, task);
+                } finally {
+                    permits.release();
+                }
+            }));
+        }
+        List<T> ret = new ArrayList<>(n);
+        for (Future<T> f : futures) {
+            try {
+                ret.add(f.get());
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                futures.forEach(item -> item.cancel(true));
+                throw new CancellationException("interrupted");
+            } catch (ExecutionException ex) {
+                ret.add(null);
+            }
+        }
+        return ret;
+    }
+
+    private <T> T run(int index, IntFunction<T> task) {
+        inFlight.incrementAndGet();
+        try {
+            T t = task.apply(index);
+            completed.incrementAndGet();
+            return t;
+        } catch (RuntimeException ex) {
+            failed.incrementAndGet();
+            log.error("{} task {} failed", name, index, ex);
+            return null;
+        } finally {
+            inFlight.decrementAndGet();
+        }
+    }
+
+    /**
+     * 等待执行的任务数
+     *
+     * @return
+     */
+    public int queueDepth() {
+        return queued.get();
+    }
+
+    /**
+     * 在途的任务数
+     *
+     * @return
+     */
+    public int inFlight() {
+        return inFlight.get();
+    }
+
+    /**
+     * 完成的任务数
+     *
+     * @return
+     */
+    public long completed() {
+        return completed.get();
+    }
+
+    /**
+     * 失败的任务数
+     *
+     * @return
+     */
+    public long failed() {
+        return failed.get();
+    }
+
+    @Override
+    public void close() {
+        SHARED.remove(parallel, this);
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,281 @@
+package org.beykery.eu.util;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.reactivex.Flowable;
+import lombok.Getter;
+import lombok.Setter;
+import org.web3j.protocol.ObjectMapperFactory;
+import org.web3j.protocol.Web3jService;
+import org.web3j.protocol.core.BatchRequest;
+import org.web3j.protocol.core.BatchResponse;
+import org.web3j.protocol.core.DefaultBlockParameter;
+import org.web3j.protocol.core.Request;
+import org.web3j.protocol.core.Response;
+import org.web3j.protocol.core.methods.request.Transaction;
+import org.web3j.protocol.websocket.events.Notification;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 缓存不可变只读请求的 web3j service 装饰器
+ * <p>
+ * 缓存：eth_chainId、net_version，以及指定块高的 eth_getCode / eth_call；
+ * latest 的 eth_getCode 和 decimals()/symbol()/name() 只在 {@link #setCacheLatest} 打开后缓存。
+ * 空结果（"0x"，例如合约还没部署）不缓存。相同的请求同时只有一个在途，其它调用者共享结果。缓存按 LRU 淘汰，条目有 ttl
+ */
+public class CachingWeb3jService implements Web3jService {
+
+    /**
+     * 不随块变化的方法
+     */
+    private static final Set<String> IMMUTABLE_METHODS = Set.of("eth_chainId", "net_version");
+
+    /**
+     * decimals() symbol() name()
+     */
+    private static final Set<String> IMMUTABLE_SELECTORS = Set.of("0x313ce567", "0x95d89b41", "0x06fdde03");
+
+    private static final ObjectMapper mapper = ObjectMapperFactory.getObjectMapper();
+
+    /**
+     * 被装饰的service
+     */
+    @Getter
+    private final Web3jService delegate;
+
+    /**
+     * 最多缓存的条目数
+     */
+    private final int maxSize;
+
+    /**
+     * 条目存活时间(ms)
+     */
+    private final long ttl;
+
+    private final Map<String, Entry> cache;
+    private final Map<String, CompletableFuture<Response<?>>> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * latest 的 eth_getCode 和 decimals()/symbol()/name() 也缓存；
+     * 合约部署后通常不变，但代理升级、selfdestruct 后在ttl内会拿到旧值
+     */
+    @Setter
+    private volatile boolean cacheLatest;
+
+    @Getter
+    private final AtomicLong hits = new AtomicLong();
+    @Getter
+    private final AtomicLong misses = new AtomicLong();
+    @Getter
+    private final AtomicLong coalesced = new AtomicLong();
+
+    /**
+     * @param delegate
+     * @param maxSize  最多缓存的条目数
+     * @param ttl      条目存活时间(ms)
+     */
+    public CachingWeb3jService(Web3jService delegate, int maxSize, long ttl) {
+        this.delegate = delegate;
+        this.maxSize = Math.max(maxSize, 1);
+        this.ttl = ttl <= 0 ? Long.MAX_VALUE : ttl;
+        this.cache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > CachingWeb3jService.this.maxSize;
+            }
+        };
+    }
+
+    public CachingWeb3jService(Web3jService delegate) {
+        this(delegate, 10000, 10 * 60 * 1000L);
+    }
+
+    @Override
+    public <T extends Response> T send(Request request, Class<T> responseType) throws IOException {
+        if (!cacheable(request)) {
+            return delegate.send(request, responseType);
+        }
+        String key = key(request);
+        Response<?> cached = get(key);
+        if (cached != null) {
+            hits.incrementAndGet();
+            return (T) cached;
+        }
+        CompletableFuture<Response<?>> mine = new CompletableFuture<>();
+        CompletableFuture<Response<?>> other = inFlight.putIfAbsent(key, mine);
+        if (other != null) {
+            coalesced.incrementAndGet();
+            return (T) await(other);
+        }
+        misses.incrementAndGet();
+        try {
+            T response = delegate.send(request, responseType);
+            if (response != null && !response.hasError() && response.getResult() != null && !"0x".equals(response.getResult())) {
+                put(key, response);
+            }
+            mine.complete(response);
+            return response;
+        } catch (IOException | RuntimeException ex) {
+            mine.completeExceptionally(ex);
+            throw ex;
+        } finally {
+            inFlight.remove(key, mine);
+        }
+    }
+
+    private static Response<?> await(CompletableFuture<Response<?>> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted", ex);
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    @Override
+    public <T extends Response> CompletableFuture<T> sendAsync(Request request, Class<T> responseType) {
+        if (!cacheable(request)) {
+            return delegate.sendAsync(request, responseType);
+        }
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return send(request, responseType);
+            } catch (IOException ex) {
+                throw new CompletionException(ex);
+            }
+        });
+    }
+
+    @Override
+    public BatchResponse sendBatch(BatchRequest batchRequest) throws IOException {
+        return delegate.sendBatch(batchRequest);
+    }
+
+    @Override
+    public CompletableFuture<BatchResponse> sendBatchAsync(BatchRequest batchRequest) {
+        return delegate.sendBatchAsync(batchRequest);
+    }
+
+    @Override
+    public <T extends Notification<?>> Flowable<T> subscribe(Request request, String unsubscribeMethod, Class<T> responseType) {
+        return delegate.subscribe(request, unsubscribeMethod, responseType);
+    }
+
+    @Override
+    public void close() throws IOException {
+        delegate.close();
+    }
+
+    /**
+     * 清空缓存
+     */
+    public void clear() {
+        synchronized (cache) {
+            cache.clear();
+        }
+    }
+
+    public int size() {
+        synchronized (cache) {
+            return cache.size();
+        }
+    }
+
+    /**
+     * 是否可以缓存
+     *
+     * @param request
+     * @return
+     */
+    private boolean cacheable(Request<?, ?> request) {
+        String method = request.getMethod();
+        if (IMMUTABLE_METHODS.contains(method)) {
+            return true;
+        }
+        List<?> params = request.getParams();
+        if ("eth_getCode".equals(method)) {
+            return cacheLatest || params.size() >= 2 && isBlockNumber(params.get(1));
+        }
+        if ("eth_call".equals(method)) {
+            if (params.size() >= 2 && isBlockNumber(params.get(1))) {
+                return true;
+            }
+            if (cacheLatest && !params.isEmpty() && params.get(0) instanceof Transaction) {
+                String data = ((Transaction) params.get(0)).getData();
+                return data != null && data.length() == 10 && IMMUTABLE_SELECTORS.contains(data.toLowerCase());
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 参数是否为具体块高
+     *
+     * @param param
+     * @return
+     */
+    private static boolean isBlockNumber(Object param) {
+        String v = param instanceof DefaultBlockParameter ? ((DefaultBlockParameter) param).getValue() : String.valueOf(param);
+        return v.startsWith("0x");
+    }
+
+    private static String key(Request<?, ?> request) throws IOException {
+        try {
+            return request.getMethod() + mapper.writeValueAsString(request.getParams());
+        } catch (JsonProcessingException ex) {
+            throw new IOException(ex);
+        }
+    }
+
+    private Response<?> get(String key) {
+        synchronized (cache) {
+            Entry e = cache.get(key);
+            if (e == null) {
+                return null;
+            }
+            if (e.expiresAt < System.currentTimeMillis()) {
+                cache.remove(key);
+                return null;
+            }
+            return e.response;
+        }
+    }
+
+    private void put(String key, Response<?> response) {
+        long now = System.currentTimeMillis();
+        long expiresAt = ttl > Long.MAX_VALUE - now ? Long.MAX_VALUE : now + ttl;
+        synchronized (cache) {
+            cache.put(key, new Entry(response, expiresAt));
+        }
+    }
+
+    private static final class Entry {
+        private final Response<?> response;
+        private final long expiresAt;
+
+        Entry(Response<?> response, long expiresAt) {
+            this.response = response;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package org.beykery.eu.util;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.web3j.abi.datatypes.Type;
+
+import java.util.List;
+
+/**
+ * 一次合约调用的结果
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class CallResult {
+
+    /**
+     * 是否成功
+     */
+    private boolean success;
+
+    /**
+     * 解码后的返回值，失败时为空
+     */
+    private List<Type> values;
+
+    /**
+     * 原始返回（hex），失败时可能是revert信息
+     */
+    private String raw;
+
+    /**
+     * 请求本身出错时的错误信息
+     */
+    private String error;
+
+    /**
+     * 第i个返回值
+     *
+     * @param i
+     * @param <T>
+     * @return 失败或不存在时为null
+     */
+    public <T> T value(int i) {
+        return success && values != null && i < values.size() ? (T) values.get(i).getValue() : null;
+    }
+}
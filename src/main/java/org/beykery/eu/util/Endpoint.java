@@ -0,0 +1,151 @@
+package org.beykery.eu.util;
+
+import lombok.Getter;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * rpc节点及其健康状态
+ */
+public class Endpoint {
+
+    /**
+     * url
+     */
+    @Getter
+    private final String url;
+
+    /**
+     * 权重
+     */
+    @Getter
+    private final int weight;
+
+    /**
+     * 平滑加权轮询的当前权重
+     */
+    int currentWeight;
+
+    /**
+     * 延迟的指数滑动平均(ms)，没有样本时为-1
+     */
+    private volatile double latency = -1;
+
+    /**
+     * 连续失败次数
+     */
+    private final AtomicInteger failures = new AtomicInteger();
+
+    /**
+     * 被剔除的次数，用来计算退避时间
+     */
+    private final AtomicInteger ejections = new AtomicInteger();
+
+    /**
+     * 剔除到何时(ms)
+     */
+    private volatile long ejectedUntil;
+
+    /**
+     * 在途请求数
+     */
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    /**
+     * 总请求数
+     */
+    private final AtomicLong requests = new AtomicLong();
+
+    /**
+     * 总错误数
+     */
+    private final AtomicLong errors = new AtomicLong();
+
+    public Endpoint(String url, int weight) {
+        this.url = url;
+        this.weight = Math.max(weight, 1);
+    }
+
+    /**
+     * 延迟(ms)的EWMA
+     *
+     * @return 没有样本时为-1
+     */
+    public double getLatency() {
+        return latency;
+    }
+
+    /**
+     * 是否可用
+     *
+     * @param now
+     * @return
+     */
+    public boolean isAvailable(long now) {
+        return now >= ejectedUntil;
+    }
+
+    public long getEjectedUntil() {
+        return ejectedUntil;
+    }
+
+    public int getFailures() {
+        return failures.get();
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    public long getRequests() {
+        return requests.get();
+    }
+
+    public long getErrors() {
+        return errors.get();
+    }
+
+    void begin() {
+        inFlight.incrementAndGet();
+        requests.incrementAndGet();
+    }
+
+    void success(long millis, double alpha) {
+        inFlight.decrementAndGet();
+        double l = latency;
+        latency = l < 0 ? millis : l * (1 - alpha) + millis * alpha;
+        failures.set(0);
+        ejections.set(0);
+    }
+
+    void cancel() {
+        inFlight.decrementAndGet();
+    }
+
+    /**
+     * 失败，连续失败达到threshold时剔除，剔除时间按次数指数退避
+     *
+     * @return 是否被剔除
+     */
+    boolean failure(int threshold, long baseEjection, long maxEjection, long retryAfter) {
+        inFlight.decrementAndGet();
+        errors.incrementAndGet();
+        long now = System.currentTimeMillis();
+        if (retryAfter > 0) {
+            ejectedUntil = now + retryAfter;
+            return true;
+        }
+        if (failures.incrementAndGet() >= threshold) {
+            int n = Math.min(ejections.getAndIncrement(), 30);
+            ejectedUntil = now + Math.min(baseEjection << n, maxEjection);
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        return url;
+    }
+}
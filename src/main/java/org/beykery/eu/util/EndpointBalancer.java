@@ -0,0 +1,311 @@
+package org.beykery.eu.util;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Collectors;
+
+/**
+ * 多节点负载均衡
+ * <p>
+ * 被动健康检查：连续失败达到阈值或返回429时剔除节点，剔除时间指数退避；
+ * 剔除到期后节点重新参与选择，再次失败会被更久地剔除，成功则恢复
+ */
+@Slf4j
+public abstract class EndpointBalancer {
+
+    /**
+     * 节点
+     */
+    @Getter
+    protected final List<Endpoint> endpoints;
+
+    /**
+     * 连续失败多少次剔除
+     */
+    private int failureThreshold = 3;
+
+    /**
+     * 首次剔除时长(ms)
+     */
+    private long baseEjection = 1000;
+
+    /**
+     * 最长剔除时长(ms)
+     */
+    private long maxEjection = 60 * 1000;
+
+    /**
+     * EWMA的新样本比重
+     */
+    private double alpha = 0.2;
+
+    protected EndpointBalancer(List<Endpoint> endpoints) {
+        if (endpoints == null || endpoints.isEmpty()) {
+            throw new IllegalArgumentException("no endpoint");
+        }
+        this.endpoints = Collections.unmodifiableList(new ArrayList<>(endpoints));
+    }
+
+    /**
+     * 随机，原来的默认行为
+     *
+     * @param urls
+     * @return
+     */
+    public static EndpointBalancer random(List<String> urls) {
+        return new RandomBalancer(endpoints(urls));
+    }
+
+    /**
+     * 延迟EWMA最小
+     *
+     * @param urls
+     * @return
+     */
+    public static EndpointBalancer leastLatency(List<String> urls) {
+        return new LeastLatencyBalancer(endpoints(urls));
+    }
+
+    /**
+     * 平滑加权轮询
+     *
+     * @param weights url -> weight
+     * @return
+     */
+    public static EndpointBalancer weightedRoundRobin(Map<String, Integer> weights) {
+        return new RoundRobinBalancer(weights.entrySet().stream().map(item -> new Endpoint(item.getKey(), item.getValue())).collect(Collectors.toList()));
+    }
+
+    /**
+     * 轮询
+     *
+     * @param urls
+     * @return
+     */
+    public static EndpointBalancer roundRobin(List<String> urls) {
+        return new RoundRobinBalancer(endpoints(urls));
+    }
+
+    /**
+     * 随机选两个，取负载（延迟 * (在途 + 1)）较小的
+     *
+     * @param urls
+     * @return
+     */
+    public static EndpointBalancer powerOfTwo(List<String> urls) {
+        return new PowerOfTwoBalancer(endpoints(urls));
+    }
+
+    private static List<Endpoint> endpoints(List<String> urls) {
+        return urls.stream().map(item -> new Endpoint(item, 1)).collect(Collectors.toList());
+    }
+
+    /**
+     * 健康检查参数
+     *
+     * @param failureThreshold 连续失败多少次剔除
+     * @param baseEjection     首次剔除时长(ms)
+     * @param maxEjection      最长剔除时长(ms)
+     * @return this
+     */
+    public EndpointBalancer health(int failureThreshold, long baseEjection, long maxEjection) {
+        this.failureThreshold = Math.max(failureThreshold, 1);
+        this.baseEjection = Math.max(baseEjection, 1);
+        this.maxEjection = Math.max(maxEjection, this.baseEjection);
+        return this;
+    }
+
+    /**
+     * 选择一个节点
+     *
+     * @return
+     */
+    public Endpoint select() {
+        return select(null);
+    }
+
+    /**
+     * 选择一个节点，尽量避开exclude
+     *
+     * @param exclude 可以为null
+     * @return
+     */
+    public Endpoint select(Collection<Endpoint> exclude) {
+        long now = System.currentTimeMillis();
+        List<Endpoint> candidates = new ArrayList<>(endpoints.size());
+        for (Endpoint e : endpoints) {
+            if (e.isAvailable(now) && (exclude == null || !exclude.contains(e))) {
+                candidates.add(e);
+            }
+        }
+        if (candidates.isEmpty()) {
+            return earliest(exclude);
+        }
+        return candidates.size() == 1 ? candidates.get(0) : choose(candidates);
+    }
+
+    /**
+     * 全部不可用时选最早恢复的
+     *
+     * @param exclude
+     * @return
+     */
+    private Endpoint earliest(Collection<Endpoint> exclude) {
+        Endpoint best = null;
+        for (Endpoint e : endpoints) {
+            if ((exclude == null || !exclude.contains(e)) && (best == null || e.getEjectedUntil() < best.getEjectedUntil())) {
+                best = e;
+            }
+        }
+        return best != null ? best : earliest(null);
+    }
+
+    /**
+     * 在可用节点中选择
+     *
+     * @param candidates 至少两个
+     * @return
+     */
+    protected abstract Endpoint choose(List<Endpoint> candidates);
+
+    /**
+     * 请求开始
+     *
+     * @param e
+     */
+    public void begin(Endpoint e) {
+        e.begin();
+    }
+
+    /**
+     * 请求成功
+     *
+     * @param e
+     * @param millis 耗时
+     */
+    public void onSuccess(Endpoint e, long millis) {
+        e.success(millis, alpha);
+    }
+
+    /**
+     * 请求被取消（对冲中落后的一方），不计入健康状态
+     *
+     * @param e
+     */
+    public void onCancel(Endpoint e) {
+        e.cancel();
+    }
+
+    /**
+     * 请求失败
+     *
+     * @param e
+     * @param code       http code, io错误时为0
+     * @param retryAfter 429时服务端要求的等待(ms)，没有时为0
+     */
+    public void onFailure(Endpoint e, int code, long retryAfter) {
+        if (code == 429 && retryAfter <= 0) {
+            retryAfter = baseEjection;
+        }
+        if (e.failure(failureThreshold, baseEjection, maxEjection, retryAfter)) {
+            log.warn("endpoint {} ejected until {} after {} failures (code {})", e.getUrl(), e.getEjectedUntil(), e.getFailures(), code);
+        }
+    }
+
+    /**
+     * random
+     */
+    private static class RandomBalancer extends EndpointBalancer {
+
+        private RandomBalancer(List<Endpoint> endpoints) {
+            super(endpoints);
+        }
+
+        @Override
+        protected Endpoint choose(List<Endpoint> candidates) {
+            return candidates.get(ThreadLocalRandom.current().nextInt(candidates.size()));
+        }
+    }
+
+    /**
+     * least latency (EWMA)
+     */
+    private static class LeastLatencyBalancer extends EndpointBalancer {
+
+        private LeastLatencyBalancer(List<Endpoint> endpoints) {
+            super(endpoints);
+        }
+
+        @Override
+        protected Endpoint choose(List<Endpoint> candidates) {
+            Endpoint best = null;
+            for (Endpoint e : candidates) {
+                // 没有样本的节点优先，用来探测
+                if (e.getLatency() < 0) {
+                    return e;
+                }
+                if (best == null || e.getLatency() < best.getLatency()) {
+                    best = e;
+                }
+            }
+            return best;
+        }
+    }
+
+    /**
+     * smooth weighted round robin
+     */
+    private static class RoundRobinBalancer extends EndpointBalancer {
+
+        private RoundRobinBalancer(List<Endpoint> endpoints) {
+            super(endpoints);
+        }
+
+        @Override
+        protected synchronized Endpoint choose(List<Endpoint> candidates) {
+            Endpoint best = null;
+            int total = 0;
+            for (Endpoint e : candidates) {
+                e.currentWeight += e.getWeight();
+                total += e.getWeight();
+                if (best == null || e.currentWeight > best.currentWeight) {
+                    best = e;
+                }
+            }
+            best.currentWeight -= total;
+            return best;
+        }
+    }
+
+    /**
+     * power of two choices
+     */
+    private static class PowerOfTwoBalancer extends EndpointBalancer {
+
+        private PowerOfTwoBalancer(List<Endpoint> endpoints) {
+            super(endpoints);
+        }
+
+        @Override
+        protected Endpoint choose(List<Endpoint> candidates) {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            int n = candidates.size();
+            int i = random.nextInt(n);
+            int j = random.nextInt(n - 1);
+            if (j >= i) {
+                j++;
+            }
+            Endpoint a = candidates.get(i);
+            Endpoint b = candidates.get(j);
+            return load(a) <= load(b) ? a : b;
+        }
+
+        private static double load(Endpoint e) {
+            double l = e.getLatency();
+            return (l < 0 ? 0 : l) * (e.getInFlight() + 1);
+        }
+    }
+}
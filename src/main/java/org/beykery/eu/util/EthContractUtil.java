@@ -1,8 +1,8 @@
 package org.beykery.eu.util;
 
-import com.github.ferstl.streams.ParallelIntStreamSupport;
 import lombok.extern.slf4j.Slf4j;
 import okhttp3.OkHttpClient;
+import org.beykery.eu.event.LazyLogEvent;
 import org.beykery.eu.event.LogEvent;
 import org.beykery.eu.event.PendingTransaction;
 import org.web3j.abi.*;
@@ -25,6 +25,7 @@ import org.web3j.tx.Contract;
 import org.web3j.utils.Numeric;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.math.RoundingMode;
@@ -32,7 +33,9 @@ import java.net.ConnectException;
 import java.security.SignatureException;
 import java.util.*;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.IntFunction;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 import java.util.stream.Stream;
@@ -53,9 +56,9 @@ public class EthContractUtil {
     public static final String ZERO_ADDRESS = "0x0000000000000000000000000000000000000000";
 
     /**
-     * pool for parallel
+     * 按 hash 并发请求的默认并发数
      */
-    private static ForkJoinPool POOL;
+    public static final int DEFAULT_FAN_OUT = 32;
 
     /**
      * 合约函数call
@@ -124,42 +127,68 @@ public class EthContractUtil {
      * @return
      */
     public static List<LogEvent> events(TransactionReceipt receipt, List<Event> events) {
+        return events(receipt, EventSet.of(events));
+    }
+
+    /**
+     * event for receipt
+     *
+     * @param receipt
+     * @param set
+     * @return
+     */
+    public static List<LogEvent> events(TransactionReceipt receipt, EventSet set) {
         List<Log> logs = receipt.getLogs();
         if (logs != null) {
-            Map<String, Event> signatures = new HashMap<>();
-            events.forEach(item -> {
-                String encodedEventSignature = getTopic(item);
-                signatures.put(encodedEventSignature, item);
-            });
-            List<LogEvent> es = logs.stream().map(item -> {
-                String topic = item.getTopics().get(0);
-                Event event = signatures.get(topic);
-                if (event != null) {
-                    String tx = item.getTransactionHash().toLowerCase();           // tx hash
-                    BigInteger blockNumber = item.getBlockNumber();                // block number
-                    BigInteger lidx = item.getLogIndex();                          // log index
-                    String contractAddress = item.getAddress().toLowerCase();      // contract address
-
-                    EventValues values = Contract.staticExtractEventParameters(event, item);
-
-                    LogEvent le = LogEvent.builder()
-                            .event(event)
-                            .transactionHash(tx)
-                            .blockNumber(blockNumber.longValue())
-                            .logIndex(lidx.longValue())
-                            .contract(contractAddress)
-                            .indexedValues(values.getIndexedValues())
-                            .nonIndexedValues(values.getNonIndexedValues())
-                            .build();
-                    return le;
-                }
-                return null;
-            }).filter(Objects::nonNull).collect(Collectors.toList());
-            return es;
+            return events(logs, set);
         }
         return Collections.EMPTY_LIST;
     }
 
+    /**
+     * 解析log，丢弃不在set中的
+     *
+     * @param logs
+     * @param set
+     * @return
+     */
+    public static List<LogEvent> events(List<Log> logs, EventSet set) {
+        List<LogEvent> les = new ArrayList<>();
+        for (Log item : logs) {
+            Event event = set.match(item);
+            if (event != null) {
+                les.add(logEvent(event, item));
+            }
+        }
+        return les;
+    }
+
+    /**
+     * build log event
+     *
+     * @param event
+     * @param item
+     * @return
+     */
+    private static LogEvent logEvent(Event event, Log item) {
+        String tx = item.getTransactionHash().toLowerCase();           // tx hash
+        BigInteger blockNumber = item.getBlockNumber();                // block number
+        BigInteger lidx = item.getLogIndex();                          // log index
+        String contractAddress = item.getAddress().toLowerCase();      // contract address
+
+        EventValues values = Contract.staticExtractEventParameters(event, item);
+
+        return LogEvent.builder()
+                .event(event)
+                .transactionHash(tx)
+                .blockNumber(blockNumber.longValue())
+                .logIndex(lidx.longValue())
+                .contract(contractAddress)
+                .indexedValues(values.getIndexedValues())
+                .nonIndexedValues(values.getNonIndexedValues())
+                .build();
+    }
+
     /**
      * events for tx
      *
@@ -170,8 +199,21 @@ public class EthContractUtil {
      * @throws IOException
      */
     public static List<LogEvent> events(Web3j web3j, String hash, List<Event> events) throws IOException {
+        return events(web3j, hash, EventSet.of(events));
+    }
+
+    /**
+     * events for tx
+     *
+     * @param web3j
+     * @param hash
+     * @param set
+     * @return
+     * @throws IOException
+     */
+    public static List<LogEvent> events(Web3j web3j, String hash, EventSet set) throws IOException {
         TransactionReceipt receipt = transactionReceipt(web3j, hash);
-        return events(receipt, events);
+        return events(receipt, set);
     }
 
     /**
@@ -400,7 +442,7 @@ public class EthContractUtil {
      */
     public static long chainId(Web3j web3j) throws IOException {
         EthChainId ret = web3j.ethChainId().send();
-        return ret.getId();
+        return ret.getChainId().longValue();
     }
 
     /**
@@ -465,6 +507,66 @@ public class EthContractUtil {
         return list;
     }
 
+    /**
+     * 跨合约的batch，固定在同一个块上，单个调用失败不影响其它
+     *
+     * @param web3j
+     * @return
+     */
+    public static BatchCall batchCall(Web3j web3j) {
+        return new BatchCall(web3j);
+    }
+
+    /**
+     * multicall3，多个调用合成一个eth_call
+     *
+     * @param web3j
+     * @return
+     */
+    public static Multicall multicall(Web3j web3j) {
+        return new Multicall(web3j);
+    }
+
+    /**
+     * 同一个合约的多个调用，用multicall3合成一个eth_call
+     *
+     * @param web3j
+     * @param contract
+     * @param fs
+     * @return 与fs顺序一致
+     * @throws IOException
+     */
+    public static List<CallResult> multicall(Web3j web3j, String contract, Function... fs) throws IOException {
+        Multicall mc = new Multicall(web3j);
+        for (Function f : fs) {
+            mc.add(contract, f);
+        }
+        return mc.execute();
+    }
+
+    /**
+     * 批量查eip20余额（multicall3）
+     *
+     * @param web3j
+     * @param userAddresses
+     * @param contractAddress
+     * @param block           小于0时为latest
+     * @return 与userAddresses顺序一致，调用失败的为null
+     * @throws IOException
+     */
+    public static List<BigInteger> balancesOf(Web3j web3j, List<String> userAddresses, String contractAddress, long block) throws IOException {
+        Multicall mc = new Multicall(web3j);
+        if (block >= 0) {
+            mc.block(block);
+        }
+        for (String user : userAddresses) {
+            mc.add(contractAddress, new Function("balanceOf", Collections.singletonList(new Address(user)),
+                    Collections.singletonList(new TypeReference<Uint256>() {
+                    })));
+        }
+        return mc.execute().stream().map(r -> r.<BigInteger>value(0)).collect(Collectors.toList());
+    }
+
     /**
      * code for function
      *
@@ -532,6 +634,32 @@ public class EthContractUtil {
     }
 
 
+    /**
+     * websocket 自动重连、断线后自动重新订阅
+     *
+     * @param node ws/wss 地址
+     * @return
+     * @throws ConnectException 第一次连接失败
+     */
+    public static Geth getManagedWeb3j(String node) throws ConnectException {
+        return getManagedWeb3j(node, null);
+    }
+
+    /**
+     * websocket 自动重连、断线后自动重新订阅
+     *
+     * @param node     ws/wss 地址
+     * @param listener 重连成功的回调，用来补断线期间错过的数据，可以为null
+     * @return
+     * @throws ConnectException 第一次连接失败
+     */
+    public static Geth getManagedWeb3j(String node, ManagedWebSocketService.ReconnectListener listener) throws ConnectException {
+        ManagedWebSocketService ws = new ManagedWebSocketService(node);
+        ws.setReconnectListener(listener);
+        ws.connect();
+        return EuGeth.build(ws);
+    }
+
     /**
      * web3j
      *
@@ -564,6 +692,29 @@ public class EthContractUtil {
         return web3j;
     }
 
+    /**
+     * nodes with balancer
+     *
+     * @param balancer
+     * @param okClient
+     * @return
+     */
+    public static Geth getWeb3j(EndpointBalancer balancer, OkHttpClient okClient) {
+        Web3jService ws = new EuHttpService(balancer, okClient, false);
+        Geth web3j = EuGeth.build(ws);
+        return web3j;
+    }
+
+    /**
+     * 任意 web3j service，例如 {@link ReplayWeb3jService}
+     *
+     * @param service
+     * @return
+     */
+    public static Geth getWeb3j(Web3jService service) {
+        return EuGeth.build(service);
+    }
+
     /**
      * one for decimals
      *
@@ -736,9 +887,7 @@ public class EthContractUtil {
      * @return 地址
      */
     public static String address(String privateKey) {
-        Credentials credentials = Credentials.create(privateKey);
-        BigInteger number = credentials.getEcKeyPair().getPublicKey();
-        return Keys.toChecksumAddress(Keys.getAddress(number));
+        return Signer.of(privateKey).getAddress();
     }
 
     /**
@@ -806,17 +955,14 @@ public class EthContractUtil {
     }
 
     /**
-     * 本地签名
+     * 本地签名，每次都解析私钥；高频签名请持有 {@link Signer}
      *
      * @param privateKey          私钥
      * @param unsignedTransaction 待签名交易
      * @return signed transaction
      */
     public static String signTransaction(String privateKey, RawTransaction unsignedTransaction, long chainId) {
-        Credentials credentials = Credentials.create(privateKey);
-        byte[] signedMessage = chainId > 0 ? TransactionEncoder.signMessage(unsignedTransaction, chainId, credentials) : TransactionEncoder.signMessage(unsignedTransaction, credentials);
-        String hexValue = Numeric.toHexString(signedMessage);
-        return hexValue;
+        return Signer.of(privateKey).sign(unsignedTransaction, chainId);
     }
 
     /**
@@ -830,6 +976,18 @@ public class EthContractUtil {
         return signTransaction(privateKey, unsignedTransaction, 0);
     }
 
+    /**
+     * 多核并行批量签名
+     *
+     * @param privateKey
+     * @param unsignedTransactions
+     * @param chainId
+     * @return 与输入顺序一致的签名结果及吞吐
+     */
+    public static SignedBatch signTransactions(String privateKey, List<RawTransaction> unsignedTransactions, long chainId) {
+        return Signer.of(privateKey).signAll(unsignedTransactions, chainId);
+    }
+
     /**
      * nonce for address
      *
@@ -912,6 +1070,51 @@ public class EthContractUtil {
         return signAndSendTransaction(web3j, privateKey, price, limit, to, value, data, nonce, 0);
     }
 
+    /**
+     * 签名并发送交易，nonce由nonceManager本地分配，nonce相关的错误触发重新同步
+     *
+     * @param web3j
+     * @param nonceManager
+     * @param privateKey
+     * @param price
+     * @param limit
+     * @param to
+     * @param value
+     * @param data
+     * @param chainId
+     * @return
+     * @throws Exception
+     */
+    public static EthSendTransaction signAndSendTransaction(
+            Web3j web3j,
+            NonceManager nonceManager,
+            String privateKey,
+            BigInteger price,
+            BigInteger limit,
+            String to,
+            BigInteger value,
+            String data,
+            long chainId
+    ) throws Exception {
+        Signer signer = Signer.of(privateKey);
+        BigInteger nonce = nonceManager.next(signer.getAddress());
+        EthSendTransaction result;
+        try {
+            result = sendSignedTransaction(web3j, signer.sign(rawTransaction(nonce, price, limit, to, value, data), chainId));
+        } catch (RpcErrorException ex) {
+            // EuHttpService 把 rpc error 作为 RpcErrorException 抛出
+            nonceManager.onRejected(signer.getAddress(), nonce, ex.getMessage());
+            throw ex;
+        } catch (IOException ex) {
+            nonceManager.onUnknown(signer.getAddress());
+            throw ex;
+        }
+        if (result.hasError()) {
+            nonceManager.onRejected(signer.getAddress(), nonce, result.getError().getMessage());
+        }
+        return result;
+    }
+
     /**
      * send signed transaction
      *
@@ -1154,6 +1357,28 @@ public class EthContractUtil {
         }
     }
 
+    /**
+     * pending transactions
+     *
+     * @param web3j
+     * @param filterId
+     * @param executor
+     * @param batchSize
+     * @return
+     * @throws Exception
+     */
+    public static List<PendingTransaction> pendingTransactions(Web3j web3j, BigInteger filterId, BatchExecutor executor, int batchSize) throws Exception {
+        EthLog logs = web3j.ethGetFilterChanges(filterId).send();
+        List<EthLog.LogResult> ls = logs.getLogs();
+        if (ls != null && !ls.isEmpty()) {
+            List<org.web3j.protocol.core.methods.response.Transaction> txs = pendingTransactions(web3j, ls.stream().map(item -> item.get().toString()).collect(Collectors.toList()), executor, batchSize);
+            long now = System.currentTimeMillis();
+            return txs.stream().map(item -> new PendingTransaction(item, now, false)).toList();
+        } else {
+            return Collections.EMPTY_LIST;
+        }
+    }
+
     /**
      * 求pending
      *
@@ -1162,19 +1387,55 @@ public class EthContractUtil {
      * @return
      */
     public static List<org.web3j.protocol.core.methods.response.Transaction> pendingTransactions(Web3j web3j, List<String> ls, int parallel, int batchSize) {
-        if (parallel > 1) {
-            if (POOL == null || POOL.getParallelism() != parallel) {
-                POOL = new ForkJoinPool(parallel);
-            }
+        return pendingTransactions(web3j, ls, parallel > 1 ? batchExecutor(web3j, parallel) : null, batchSize);
+    }
+
+    /**
+     * web3j 上注入的 executor，没有时用按并行度共享的
+     *
+     * @param web3j
+     * @param parallel
+     * @return
+     */
+    public static BatchExecutor batchExecutor(Web3j web3j, int parallel) {
+        BatchExecutor executor = web3j instanceof EuGeth ? ((EuGeth) web3j).getBatchExecutor() : null;
+        return executor != null ? executor : BatchExecutor.shared(parallel);
+    }
+
+    /**
+     * 按 hash / 按块并发请求时用的executor
+     * <p>
+     * 优先使用 EuGeth 上注入的；否则并发数取 EuHttpService 的节点并发上限之和，未限制时为 {@link #DEFAULT_FAN_OUT}
+     *
+     * @param web3j
+     * @return
+     */
+    public static BatchExecutor fanOut(Web3j web3j) {
+        Web3jService ws = service(web3j);
+        if (ws instanceof CachingWeb3jService) {
+            ws = ((CachingWeb3jService) ws).getDelegate();
         }
+        int concurrency = ws instanceof EuHttpService ? ((EuHttpService) ws).concurrency() : 0;
+        return batchExecutor(web3j, concurrency > 0 ? concurrency : DEFAULT_FAN_OUT);
+    }
+
+    /**
+     * 求pending
+     *
+     * @param web3j
+     * @param ls        hash list
+     * @param executor  为null时串行
+     * @param batchSize
+     * @return
+     */
+    public static List<org.web3j.protocol.core.methods.response.Transaction> pendingTransactions(Web3j web3j, List<String> ls, BatchExecutor executor, int batchSize) {
         batchSize = batchSize <= 0 ? 50 : batchSize;
         int group = ls.size() % batchSize == 0 ? (ls.size() / batchSize) : (ls.size() / batchSize + 1);
         if (group == 0) {
             group++;
         }
         final int finalBatchSize = batchSize;
-        IntStream stream = (parallel > 1 && group > 1) ? ParallelIntStreamSupport.range(0, group, POOL) : IntStream.range(0, group);
-        List<List<EthTransaction>> list = stream.mapToObj(g -> {
+        IntFunction<List<EthTransaction>> task = g -> {
             int start = g * finalBatchSize;
             int end = start + finalBatchSize;
             if (end > ls.size()) {
@@ -1202,7 +1463,13 @@ public class EthContractUtil {
                     return null;
                 }
             }
-        }).filter(Objects::nonNull).toList();
+        };
+        List<List<EthTransaction>> list;
+        if (executor != null && group > 1) {
+            list = executor.invokeAll(group, task).stream().filter(Objects::nonNull).toList();
+        } else {
+            list = IntStream.range(0, group).mapToObj(task).filter(Objects::nonNull).toList();
+        }
         List<org.web3j.protocol.core.methods.response.Transaction> ret = new ArrayList<>();
         list.forEach(item -> item.forEach(r -> {
             org.web3j.protocol.core.methods.response.Transaction t = r.getResult();
@@ -1213,7 +1480,7 @@ public class EthContractUtil {
         if (ret.size() != ls.size()) {
             log.warn("{} fetched with {} total pxs", ret.size(), ls.size());
         }
-        if (parallel > 1 && group > 1) {
+        if (executor != null && group > 1) {
             ret.sort((t1, t2) -> {
                 BigInteger price1 = price(t1);
                 BigInteger price2 = price(t2);
@@ -1263,6 +1530,20 @@ public class EthContractUtil {
         return getLogEvents(web3j, from, to, events, contracts, false);
     }
 
+    /**
+     * 查找块上的事件
+     *
+     * @param web3j
+     * @param from
+     * @param to
+     * @param set
+     * @return
+     * @throws Exception
+     */
+    public static List<LogEvent> getLogEvents(Web3j web3j, long from, long to, EventSet set) throws Exception {
+        return getLogEvents(web3j, from, to, set, false);
+    }
+
     /**
      * 获取tx上的log
      *
@@ -1274,65 +1555,218 @@ public class EthContractUtil {
      * @throws IOException
      */
     public static List<LogEvent> getLogEvents(Web3j web3j, String hash, List<Event> events, List<String> contracts) throws IOException {
+        return getLogEvents(web3j, hash, EventSet.of(events, contracts));
+    }
+
+    /**
+     * 获取tx上的log
+     *
+     * @param web3j
+     * @param hash
+     * @param set
+     * @return
+     * @throws IOException
+     */
+    public static List<LogEvent> getLogEvents(Web3j web3j, String hash, EventSet set) throws IOException {
         EthGetTransactionReceipt er = web3j.ethGetTransactionReceipt(hash).send();
         if (er.getTransactionReceipt().isPresent()) {
             TransactionReceipt receipt = er.getTransactionReceipt().get();
             List<Log> logs = receipt.getLogs();
             if (!logs.isEmpty()) {
-                Map<String, Event> signatures = new HashMap<>();
-                events.forEach(item -> {
-                    String encodedEventSignature = EventEncoder.encode(item);
-                    signatures.put(encodedEventSignature, item);
-                });
-                Set<String> contractsFilter = (contracts == null || contracts.isEmpty()) ? null : contracts.stream().map(String::toLowerCase).collect(Collectors.toSet());
-                Stream<Log> stream = logs.stream()
-                        .filter(item -> {
-                                    if (contractsFilter != null) {
-                                        if (!contractsFilter.contains(item.getAddress())) {
-                                            return false;
-                                        }
-                                    }
-                                    String topic = item.getTopics().get(0);
-                                    int size = item.getTopics().size() - 1;
-                                    Event event = signatures.get(topic);
-                                    List<TypeReference<Type>> indexedParams = event == null ? null : event.getIndexedParameters();
-                                    if (indexedParams != null) {
-                                        return size == indexedParams.size();
-                                    } else {
-                                        return false;
-                                    }
-                                }
-                        );
-                List<LogEvent> les = stream.map(item -> {
-                    String topic = item.getTopics().get(0);
-                    Event event = signatures.get(topic);
-
-                    String tx = item.getTransactionHash().toLowerCase();           // tx hash
-                    BigInteger blockNumber = item.getBlockNumber();                // block number
-                    BigInteger lidx = item.getLogIndex();                          // log index
-                    String contractAddress = item.getAddress().toLowerCase();      // contract address
-
-                    EventValues values = Contract.staticExtractEventParameters(event, item);
-
-                    // 通知listener
-                    LogEvent le = LogEvent.builder()
-                            .event(event)
-                            .transactionHash(tx)
-                            .blockNumber(blockNumber.longValue())
-                            .logIndex(lidx.longValue())
-                            .contract(contractAddress)
-                            .indexedValues(values.getIndexedValues())
-                            .nonIndexedValues(values.getNonIndexedValues())
-                            .build();
-                    return le;
-                }).collect(Collectors.toList());
-
-                return les;
+                return events(logs, set);
             }
         }
         return Collections.EMPTY_LIST;
     }
 
+    /**
+     * 每个batch请求的块数
+     */
+    public static final int BLOCK_RECEIPTS_BATCH = 10;
+
+    /**
+     * 按块取receipts（eth_getBlockReceipts等），每BLOCK_RECEIPTS_BATCH个块一个batch
+     *
+     * @param web3j
+     * @param executor
+     * @param source
+     * @param from
+     * @param to
+     * @param set
+     * @return 节点不支持时为null
+     */
+    private static List<LogEvent> blockReceiptLogs(Web3j web3j, BatchExecutor executor, ReceiptSource source, long from, long to, EventSet set) {
+        int blocks = (int) (to - from + 1);
+        int groups = (blocks + BLOCK_RECEIPTS_BATCH - 1) / BLOCK_RECEIPTS_BATCH;
+        AtomicBoolean unsupported = new AtomicBoolean();
+        List<List<LogEvent>> results = executor.invokeAll(groups, g -> {
+            long start = from + (long) g * BLOCK_RECEIPTS_BATCH;
+            long end = Math.min(start + BLOCK_RECEIPTS_BATCH - 1, to);
+            List<EthGetBlockReceipts> responses;
+            try {
+                if (start == end) {
+                    responses = List.of(source.request(web3j, start).send());
+                } else {
+                    BatchRequest request = batchRequest(web3j);
+                    for (long b = start; b <= end; b++) {
+                        request.add(source.request(web3j, b));
+                    }
+                    responses = (List<EthGetBlockReceipts>) request.send().getResponses();
+                }
+            } catch (RpcErrorException ex) {
+                unsupported.set(true);
+                return Collections.EMPTY_LIST;
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+            List<LogEvent> les = new ArrayList<>();
+            for (EthGetBlockReceipts response : responses) {
+                if (response.hasError()) {
+                    unsupported.set(true);
+                    return Collections.EMPTY_LIST;
+                }
+                List<TransactionReceipt> receipts = response.getBlockReceipts().orElseThrow(() -> new RuntimeException("block receipts not found from " + start + " to " + end));
+                for (TransactionReceipt receipt : receipts) {
+                    if (!receipt.getLogs().isEmpty()) {
+                        les.addAll(events(receipt.getLogs(), set));
+                    }
+                }
+            }
+            return les;
+        });
+        if (unsupported.get()) {
+            log.warn("{} failed from {} to {}, fallback to transaction receipts", source, from, to);
+            return null;
+        }
+        List<LogEvent> logs = new ArrayList<>();
+        for (List<LogEvent> les : results) {
+            if (les == null) {
+                throw new RuntimeException("can not fetch block receipts from " + from + " to " + to);
+            }
+            logs.addAll(les);
+        }
+        return logs;
+    }
+
+    /**
+     * 按交易取receipts，块头和receipt都按receiptBatchSize分batch并发请求
+     *
+     * @param web3j
+     * @param executor
+     * @param from
+     * @param to
+     * @param set
+     * @return
+     */
+    private static List<LogEvent> transactionReceiptLogs(Web3j web3j, BatchExecutor executor, long from, long to, EventSet set) {
+        List<EthBlock> blocks = batchFetch(web3j, executor, (int) (to - from + 1),
+                i -> web3j.ethGetBlockByNumber(DefaultBlockParameter.valueOf(BigInteger.valueOf(from + i)), false),
+                r -> r.getBlock() != null, "blocks from " + from + " to " + to);
+        List<String> hashes = new ArrayList<>();
+        for (EthBlock block : blocks) {
+            block.getBlock().getTransactions().forEach(item -> hashes.add(item.get().toString()));
+        }
+        List<EthGetTransactionReceipt> receipts = batchFetch(web3j, executor, hashes.size(),
+                i -> web3j.ethGetTransactionReceipt(hashes.get(i)),
+                r -> r.getTransactionReceipt().isPresent(), "receipts from " + from + " to " + to);
+        List<LogEvent> logs = new ArrayList<>();
+        for (EthGetTransactionReceipt r : receipts) {
+            List<Log> ls = r.getTransactionReceipt().get().getLogs();
+            if (!ls.isEmpty()) {
+                logs.addAll(events(ls, set));
+            }
+        }
+        return logs;
+    }
+
+    /**
+     * receipt和块头batch的大小
+     */
+    private static volatile int receiptBatchSize = 50;
+
+    /**
+     * receipt和块头batch的大小
+     *
+     * @param size 1为不用batch
+     */
+    public static void setReceiptBatchSize(int size) {
+        receiptBatchSize = Math.max(size, 1);
+    }
+
+    /**
+     * 部分失败时最多重试的轮数
+     */
+    private static final int BATCH_FETCH_ROUNDS = 3;
+
+    /**
+     * 重试前等待的基数(ms)，第k轮重试等待k倍
+     */
+    private static final long BATCH_FETCH_BACKOFF = 100;
+
+    /**
+     * 分batch并发请求n个同类请求，按下标返回
+     * <p>
+     * 整个batch失败时其中所有项、单个响应出错/不满足ok时该项记为缺失；每轮之间退避一小段时间后只重试缺失的项，
+     * BATCH_FETCH_ROUNDS轮后仍缺失则抛异常
+     *
+     * @param web3j
+     * @param executor
+     * @param n
+     * @param request  下标 -> 请求
+     * @param ok       响应是否可用
+     * @param what     出错时的描述
+     * @param <R>
+     * @return
+     */
+    private static <R extends Response<?>> List<R> batchFetch(Web3j web3j, BatchExecutor executor, int n,
+                                                              IntFunction<Request<?, R>> request, Predicate<R> ok, String what) {
+        List<R> results = new ArrayList<>(Collections.nCopies(n, null));
+        List<Integer> missing = IntStream.range(0, n).boxed().collect(Collectors.toList());
+        int size = receiptBatchSize;
+        for (int round = 0; round < BATCH_FETCH_ROUNDS && !missing.isEmpty(); round++) {
+            if (round > 0) {
+                try {
+                    Thread.sleep(BATCH_FETCH_BACKOFF * round);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    throw new RuntimeException("interrupted when fetching " + what);
+                }
+            }
+            List<Integer> todo = missing;
+            int groups = (todo.size() + size - 1) / size;
+            executor.invokeAll(groups, g -> {
+                List<Integer> chunk = todo.subList(g * size, Math.min(todo.size(), (g + 1) * size));
+                try {
+                    List<R> responses;
+                    if (chunk.size() == 1) {
+                        responses = List.of(request.apply(chunk.get(0)).send());
+                    } else {
+                        BatchRequest batch = batchRequest(web3j);
+                        chunk.forEach(i -> batch.add(request.apply(i)));
+                        responses = (List<R>) batch.send().getResponses();
+                    }
+                    for (int j = 0; j < chunk.size() && j < responses.size(); j++) {
+                        R r = responses.get(j);
+                        if (r != null && !r.hasError() && ok.test(r)) {
+                            results.set(chunk.get(j), r);
+                        }
+                    }
+                } catch (IOException ex) {
+                    log.warn("batch of {} failed : {}", chunk.size(), ex.getMessage());
+                }
+                return null;
+            });
+            missing = todo.stream().filter(i -> results.get(i) == null).collect(Collectors.toList());
+            if (!missing.isEmpty()) {
+                log.warn("{} of {} missing in round {}, {}", missing.size(), n, round, what);
+            }
+        }
+        if (!missing.isEmpty()) {
+            throw new RuntimeException("can not fetch " + what);
+        }
+        return results;
+    }
+
     /**
      * 分析log
      *
@@ -1346,23 +1780,27 @@ public class EthContractUtil {
      * @throws IOException
      */
     public static List<LogEvent> getLogEvents(Web3j web3j, long from, long to, List<Event> events, List<String> contracts, boolean logFromTx) throws Exception {
+        return getLogEvents(web3j, from, to, EventSet.of(events, contracts), logFromTx);
+    }
+
+    /**
+     * 分析log
+     *
+     * @param web3j
+     * @param from
+     * @param to
+     * @param set
+     * @param logFromTx
+     * @return
+     * @throws Exception
+     */
+    public static List<LogEvent> getLogEvents(Web3j web3j, long from, long to, EventSet set, boolean logFromTx) throws Exception {
         if (logFromTx) {
-            List<LogEvent> logs = Collections.synchronizedList(new ArrayList<>());
-            while (from <= to) {
-                EthBlock block = web3j.ethGetBlockByNumber(DefaultBlockParameter.valueOf(BigInteger.valueOf(from)), false).send();
-                List<EthBlock.TransactionResult> transactionResults = block.getBlock().getTransactions();
-                List<String> hashes = transactionResults.size() > 0 ? transactionResults.stream().map(item -> item.get().toString()).collect(Collectors.toList()) : null;
-                if (hashes != null) {
-                    hashes.parallelStream().forEach(hash -> {
-                        try {
-                            List<LogEvent> es = getLogEvents(web3j, hash, events, contracts);
-                            logs.addAll(es);
-                        } catch (Exception ex) {
-                            throw new RuntimeException(ex);
-                        }
-                    });
-                }
-                from++;
+            BatchExecutor executor = fanOut(web3j);
+            ReceiptSource source = ReceiptSource.of(web3j, from);
+            List<LogEvent> logs = source.isBlock() ? blockReceiptLogs(web3j, executor, source, from, to, set) : null;
+            if (logs == null) {
+                logs = transactionReceiptLogs(web3j, executor, from, to, set);
             }
             if (logs.size() > 0) {
                 logs.sort((o1, o2) -> {
@@ -1385,18 +1823,12 @@ public class EthContractUtil {
             }
             return logs;
         }
-        Map<String, Event> signatures = new HashMap<>();
-        events.forEach(item -> {
-            String encodedEventSignature = EventEncoder.encode(item);
-            signatures.put(encodedEventSignature, item);
-        });
         org.web3j.protocol.core.methods.request.EthFilter filter = new org.web3j.protocol.core.methods.request.EthFilter(
                 DefaultBlockParameter.valueOf(BigInteger.valueOf(from)),
                 DefaultBlockParameter.valueOf(BigInteger.valueOf(to)),
-                contracts == null ? Collections.EMPTY_LIST : contracts
+                set.getContracts()
         );
-        Set<String> topics = signatures.keySet();
-        filter.addOptionalTopics(topics.toArray(new String[0]));
+        filter.addOptionalTopics(set.getTopics());
         EthLog el = web3j.ethGetLogs(filter).send();
         if (el == null || el.hasError() || el.getLogs() == null) {
             throw new RuntimeException("can not fetch logs");
@@ -1409,49 +1841,61 @@ public class EthContractUtil {
                 return log;
             }).filter(Objects::nonNull).collect(Collectors.toList());
             if (!logs.isEmpty()) {
-                // ParallelStreamSupport.parallelStream(logs, Streams.POOL)
-                Stream<Log> stream = logs.stream()
-                        .filter(item -> {
-                            String topic = item.getTopics().get(0);
-                            int size = item.getTopics().size() - 1;
-                            Event event = signatures.get(topic);
-                            List<TypeReference<Type>> indexedParams = event == null ? null : event.getIndexedParameters();
-                            if (indexedParams != null) {
-                                return size == indexedParams.size();
-                            } else {
-                                return false;
-                            }
-                        });
-                List<LogEvent> les = stream.map(item -> {
-                    String topic = item.getTopics().get(0);
-                    Event event = signatures.get(topic);
-
-                    String tx = item.getTransactionHash().toLowerCase();           // tx hash
-                    BigInteger blockNumber = item.getBlockNumber();                // block number
-                    BigInteger lidx = item.getLogIndex();                          // log index
-                    String contractAddress = item.getAddress().toLowerCase();      // contract address
-
-                    EventValues values = Contract.staticExtractEventParameters(event, item);
-
-                    // build log event
-                    LogEvent le = LogEvent.builder()
-                            .event(event)
-                            .transactionHash(tx)
-                            .blockNumber(blockNumber.longValue())
-                            .logIndex(lidx.longValue())
-                            .contract(contractAddress)
-                            .indexedValues(values.getIndexedValues())
-                            .nonIndexedValues(values.getNonIndexedValues())
-                            .build();
-                    return le;
-                }).collect(Collectors.toList());
-
-                return les;
+                return events(logs, set);
             }
         }
         return Collections.EMPTY_LIST;
     }
 
+    /**
+     * 分析log，响应直接流式解析为{@link LazyLogEvent}，值在访问时才解码
+     * <p>
+     * web3j不是{@link EuGeth}时退回到{@link #getLogEvents(Web3j, long, long, EventSet)}
+     *
+     * @param web3j
+     * @param from
+     * @param to
+     * @param set
+     * @return
+     * @throws Exception
+     */
+    public static List<LogEvent> getLazyLogEvents(Web3j web3j, long from, long to, EventSet set) throws Exception {
+        Web3jService service = service(web3j);
+        if (service == null) {
+            return getLogEvents(web3j, from, to, set);
+        }
+        org.web3j.protocol.core.methods.request.EthFilter filter = new org.web3j.protocol.core.methods.request.EthFilter(
+                DefaultBlockParameter.valueOf(BigInteger.valueOf(from)),
+                DefaultBlockParameter.valueOf(BigInteger.valueOf(to)),
+                set.getContracts()
+        );
+        filter.addOptionalTopics(set.getTopics());
+        EthLogStream el = new Request<>("eth_getLogs", Arrays.asList(filter), service, EthLogStream.class).send();
+        if (el == null || el.hasError() || el.getResult() == null) {
+            throw new RuntimeException("can not fetch logs");
+        }
+        List<LazyLogEvent> lr = el.getResult();
+        List<LogEvent> les = new ArrayList<>(lr.size());
+        for (LazyLogEvent le : lr) {
+            Event event = set.match(le.getTopic(), le.getIndexedSize(), le.getContract());
+            if (event != null) {
+                le.setEvent(event);
+                les.add(le);
+            }
+        }
+        return les;
+    }
+
+    /**
+     * web3j service
+     *
+     * @param web3j
+     * @return 不是{@link EuGeth}时返回null
+     */
+    public static Web3jService service(Web3j web3j) {
+        return web3j instanceof EuGeth ? ((EuGeth) web3j).getWeb3jService() : null;
+    }
+
     /**
      * sign prefixed message
      *
@@ -1464,13 +1908,7 @@ public class EthContractUtil {
         // 1) adds a \x19Ethereum Signed Message\n prefix,
         // 2) adds the byte-length of the message, and
         // 3) Does NOT hash the message.
-        ECKeyPair aPair = ECKeyPair.create(Numeric.hexStringToByteArray(pri));
-        Sign.SignatureData signatureData = Sign.signPrefixedMessage(msg.getBytes(), aPair);
-        byte[] signedMessageBytes = new byte[32 + 32 + 1]; // 32 bytes for r, 32 bytes for s, 1 byte for v
-        System.arraycopy(signatureData.getR(), 0, signedMessageBytes, 0, 32);
-        System.arraycopy(signatureData.getS(), 0, signedMessageBytes, 32, 32);
-        System.arraycopy(signatureData.getV(), 0, signedMessageBytes, 64, 1);
-        return Numeric.toHexString(signedMessageBytes);
+        return Signer.of(pri).signPrefixedMessage(msg);
     }
 
     /**
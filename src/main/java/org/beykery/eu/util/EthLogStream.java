@@ -0,0 +1,172 @@
+package org.beykery.eu.util;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import org.beykery.eu.event.LazyLogEvent;
+import org.web3j.protocol.core.Response;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * eth_getLogs的响应，用jackson streaming直接解析为{@link LazyLogEvent}
+ * <p>
+ * 不经过Log/BigInteger/List&lt;String&gt;等中间对象
+ */
+public class EthLogStream extends Response<List<LazyLogEvent>> {
+
+    @Override
+    @JsonDeserialize(using = Deserializer.class)
+    public void setResult(List<LazyLogEvent> result) {
+        super.setResult(result);
+    }
+
+    /**
+     * streaming deserializer
+     */
+    public static class Deserializer extends JsonDeserializer<List<LazyLogEvent>> {
+
+        @Override
+        public List<LazyLogEvent> deserialize(JsonParser p, DeserializationContext ctxt) throws IOException {
+            if (p.currentToken() != JsonToken.START_ARRAY) {
+                return (List<LazyLogEvent>) ctxt.handleUnexpectedToken(List.class, p);
+            }
+            List<LazyLogEvent> list = new ArrayList<>();
+            while (p.nextToken() == JsonToken.START_OBJECT) {
+                list.add(readLog(p));
+            }
+            return list;
+        }
+
+        /**
+         * 一个log object
+         *
+         * @param p
+         * @return
+         * @throws IOException
+         */
+        private static LazyLogEvent readLog(JsonParser p) throws IOException {
+            LazyLogEvent le = new LazyLogEvent();
+            String field;
+            while ((field = p.nextFieldName()) != null) {
+                JsonToken token = p.nextToken();
+                switch (field) {
+                    case "address" -> le.setContract(lower(p.getText()));
+                    case "transactionHash" -> le.setTransactionHash(lower(p.getText()));
+                    case "blockNumber" -> le.setBlockNumber(hexLong(p));
+                    case "logIndex" -> le.setLogIndex(hexLong(p));
+                    case "data" -> le.setData(hexBytes(p, new byte[(p.getTextLength() - 2) / 2], 0));
+                    case "topics" -> readTopics(p, le);
+                    default -> {
+                        if (token == JsonToken.START_OBJECT || token == JsonToken.START_ARRAY) {
+                            p.skipChildren();
+                        }
+                    }
+                }
+            }
+            return le;
+        }
+
+        /**
+         * topics, 第一个为event signature，其余拼接为字节
+         *
+         * @param p
+         * @param le
+         * @throws IOException
+         */
+        private static void readTopics(JsonParser p, LazyLogEvent le) throws IOException {
+            if (p.currentToken() != JsonToken.START_ARRAY) {
+                return;
+            }
+            byte[] topics = new byte[32 * 3];
+            int n = 0;
+            while (p.nextToken() == JsonToken.VALUE_STRING) {
+                if (le.getTopic() == null) {
+                    le.setTopic(lower(p.getText()));
+                } else {
+                    if ((n + 1) * 32 > topics.length) {
+                        byte[] temp = new byte[topics.length * 2];
+                        System.arraycopy(topics, 0, temp, 0, topics.length);
+                        topics = temp;
+                    }
+                    hexBytes(p, topics, n * 32);
+                    n++;
+                }
+            }
+            if (n * 32 != topics.length) {
+                byte[] temp = new byte[n * 32];
+                System.arraycopy(topics, 0, temp, 0, temp.length);
+                topics = temp;
+            }
+            le.setTopics(topics);
+        }
+
+        /**
+         * hex string to long, 不分配对象
+         *
+         * @param p
+         * @return
+         * @throws IOException
+         */
+        private static long hexLong(JsonParser p) throws IOException {
+            if (p.currentToken() != JsonToken.VALUE_STRING) {
+                return p.currentToken() == JsonToken.VALUE_NUMBER_INT ? p.getLongValue() : 0;
+            }
+            char[] cs = p.getTextCharacters();
+            int off = p.getTextOffset();
+            int len = p.getTextLength();
+            long v = 0;
+            for (int i = prefix(cs, off, len); i < off + len; i++) {
+                v = (v << 4) | Character.digit(cs[i], 16);
+            }
+            return v;
+        }
+
+        /**
+         * hex string写入target
+         *
+         * @param p
+         * @param target
+         * @param pos
+         * @return target
+         * @throws IOException
+         */
+        private static byte[] hexBytes(JsonParser p, byte[] target, int pos) throws IOException {
+            char[] cs = p.getTextCharacters();
+            int off = p.getTextOffset();
+            int len = p.getTextLength();
+            int i = prefix(cs, off, len);
+            int end = off + len;
+            for (; i + 1 < end && pos < target.length; i += 2) {
+                target[pos++] = (byte) ((Character.digit(cs[i], 16) << 4) | Character.digit(cs[i + 1], 16));
+            }
+            return target;
+        }
+
+        private static int prefix(char[] cs, int off, int len) {
+            return len >= 2 && cs[off] == '0' && (cs[off + 1] == 'x' || cs[off + 1] == 'X') ? off + 2 : off;
+        }
+
+        /**
+         * 只有含大写字母时才转小写
+         *
+         * @param s
+         * @return
+         */
+        private static String lower(String s) {
+            if (s == null) {
+                return null;
+            }
+            for (int i = 0; i < s.length(); i++) {
+                if (Character.isUpperCase(s.charAt(i))) {
+                    return s.toLowerCase();
+                }
+            }
+            return s;
+        }
+    }
+}
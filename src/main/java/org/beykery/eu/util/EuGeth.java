@@ -8,6 +8,11 @@ public class EuGeth extends JsonRpc2_0Geth {
 
     private final Web3jService web3jService;
 
+    /**
+     * 并发batch用的executor，为null时使用共享的
+     */
+    private volatile BatchExecutor batchExecutor;
+
     public EuGeth(Web3jService web3jService) {
         super(web3jService);
         this.web3jService = web3jService;
@@ -20,4 +25,12 @@ public class EuGeth extends JsonRpc2_0Geth {
     public Web3jService getWeb3jService() {
         return web3jService;
     }
+
+    public BatchExecutor getBatchExecutor() {
+        return batchExecutor;
+    }
+
+    public void setBatchExecutor(BatchExecutor batchExecutor) {
+        this.batchExecutor = batchExecutor;
+    }
 }
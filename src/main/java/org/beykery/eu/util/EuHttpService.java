@@ -1,5 +1,7 @@
 package org.beykery.eu.util;
 
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import okhttp3.*;
@@ -16,10 +18,10 @@ import java.io.BufferedInputStream;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.security.SecureRandom;
+import java.io.InterruptedIOException;
 import java.text.MessageFormat;
 import java.util.*;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.*;
 
 import static okhttp3.ConnectionSpec.CLEARTEXT;
 
@@ -28,15 +30,16 @@ import static okhttp3.ConnectionSpec.CLEARTEXT;
  */
 public class EuHttpService extends Service {
 
-    /**
-     * 随机
-     */
-    private static final Random random = new SecureRandom();
     /**
      * mapper
      */
     private static final ObjectMapper mapper = new ObjectMapper();
 
+    /**
+     * 当前线程累计的响应字节数
+     */
+    private static final ThreadLocal<long[]> RESPONSE_BYTES = ThreadLocal.withInitial(() -> new long[1]);
+
     /**
      * Copied from {@link ConnectionSpec#APPROVED_CIPHER_SUITES}.
      */
@@ -92,10 +95,78 @@ public class EuHttpService extends Service {
 
     private OkHttpClient httpClient;
 
-    private List<String> urls;
+    private final EndpointBalancer balancer;
 
     private final boolean includeRawResponse;
 
+    /**
+     * 幂等的rpc方法，可以换节点重试或对冲
+     */
+    private static final Set<String> IDEMPOTENT_METHODS = Set.of(
+            "eth_getLogs",
+            "eth_getTransactionByHash",
+            "eth_getTransactionReceipt",
+            "eth_getBlockByNumber",
+            "eth_getBlockByHash",
+            "eth_getBlockReceipts",
+            "parity_getBlockReceipts",
+            "eth_getTransactionByBlockNumberAndIndex",
+            "eth_getBlockTransactionCountByNumber",
+            "eth_blockNumber",
+            "eth_chainId",
+            "net_version",
+            "web3_clientVersion",
+            "eth_call",
+            "eth_estimateGas",
+            "eth_getCode",
+            "eth_getBalance",
+            "eth_getStorageAt",
+            "eth_getTransactionCount",
+            "eth_gasPrice",
+            "eth_maxPriorityFeePerGas",
+            "eth_feeHistory"
+    );
+
+    /**
+     * 对冲请求的线程
+     */
+    private static final ExecutorService HEDGE_POOL = Executors.newCachedThreadPool(r -> {
+        Thread thread = new Thread(r);
+        thread.setName("thread - hedge");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * 幂等请求最多尝试的节点数
+     */
+    private int maxAttempts = 2;
+
+    /**
+     * 是否对幂等请求发对冲请求
+     */
+    private boolean hedge;
+
+    /**
+     * 对冲请求的最小延迟(ms)
+     */
+    private long minHedgeDelay = 50;
+
+    /**
+     * 每个节点最多同时在途的请求数，小于等于0不限制
+     */
+    private int maxConcurrentPerEndpoint;
+
+    /**
+     * endpoint -> 并发许可
+     */
+    private final Map<Endpoint, Semaphore> permits = new ConcurrentHashMap<>();
+
+    /**
+     * method -> 最近的延迟
+     */
+    private final Map<String, LatencyWindow> latencies = new ConcurrentHashMap<>();
+
     private HashMap<String, String> headers = new HashMap<>();
 
     /**
@@ -108,12 +179,32 @@ public class EuHttpService extends Service {
     }
 
     public EuHttpService(List<String> urls, OkHttpClient httpClient, boolean includeRawResponses) {
+        this(EndpointBalancer.random(urls), httpClient, includeRawResponses);
+    }
+
+    /**
+     * with balancer
+     *
+     * @param balancer
+     * @param httpClient
+     * @param includeRawResponses
+     */
+    public EuHttpService(EndpointBalancer balancer, OkHttpClient httpClient, boolean includeRawResponses) {
         super(includeRawResponses);
-        this.urls = urls;
+        this.balancer = balancer;
         this.httpClient = httpClient;
         this.includeRawResponse = includeRawResponses;
     }
 
+    /**
+     * with balancer
+     *
+     * @param balancer
+     */
+    public EuHttpService(EndpointBalancer balancer) {
+        this(balancer, createOkHttpClient(), false);
+    }
+
     /**
      * with client config
      *
@@ -195,37 +286,353 @@ public class EuHttpService extends Service {
 
     @Override
     protected InputStream performIO(String request) throws IOException {
+        String method = method(request);
+        boolean idempotent = method != null && isIdempotent(request);
+        int attempts = idempotent ? Math.min(maxAttempts, balancer.getEndpoints().size()) : 1;
+        if (idempotent && hedge && balancer.getEndpoints().size() > 1) {
+            return hedged(method, request);
+        }
+        List<Endpoint> tried = new ArrayList<>(attempts);
+        Exception last = null;
+        for (int i = 0; i < Math.max(attempts, 1); i++) {
+            Endpoint endpoint = balancer.select(tried);
+            tried.add(endpoint);
+            long begin = System.currentTimeMillis();
+            try {
+                InputStream is = execute(endpoint, newCall(endpoint, request));
+                latency(method).add(System.currentTimeMillis() - begin);
+                return is;
+            } catch (RpcErrorException ex) {
+                throw ex;
+            } catch (IOException | ClientConnectionException ex) {
+                last = ex;
+                if (i + 1 < attempts) {
+                    log.warn("{} failed on {}, failover: {}", method, endpoint.getUrl(), ex.getMessage());
+                }
+            }
+        }
+        if (last instanceof IOException) {
+            throw (IOException) last;
+        }
+        throw (RuntimeException) last;
+    }
+
+    /**
+     * 对冲：先发给一个节点，超过该方法的p95延迟仍未返回时再发给另一个节点，取先成功的；
+     * 该方法的延迟样本不足（还没有p95）时不对冲；某个节点连接失败时立即换下一个节点，最多尝试 max(maxAttempts, 2) 个节点
+     *
+     * @param method
+     * @param request
+     * @return
+     * @throws IOException
+     */
+    private InputStream hedged(String method, String request) throws IOException {
+        LatencyWindow window = latency(method);
+        int attempts = Math.min(Math.max(maxAttempts, 2), balancer.getEndpoints().size());
+        BlockingQueue<Outcome> outcomes = new LinkedBlockingQueue<>();
+        List<Endpoint> tried = new ArrayList<>(attempts);
+        List<okhttp3.Call> calls = new ArrayList<>(attempts);
+        long p95 = window.p95();
+        long deadline = System.currentTimeMillis() + Math.max(p95, minHedgeDelay);
+        boolean hedged = p95 < 0;   // 样本不足时不对冲
+        int running = 0;
+        Throwable last = null;
+        try {
+            running += launch(request, tried, calls, outcomes, window) ? 1 : 0;
+            while (running > 0) {
+                Outcome o;
+                if (!hedged && tried.size() < attempts) {
+                    o = outcomes.poll(deadline - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+                    if (o == null) {
+                        // 超过p95未返回，发对冲请求
+                        hedged = true;
+                        running += launch(request, tried, calls, outcomes, window) ? 1 : 0;
+                        continue;
+                    }
+                } else {
+                    o = outcomes.take();
+                }
+                running--;
+                if (o.error == null) {
+                    RESPONSE_BYTES.get()[0] += o.bytes;
+                    return o.stream;
+                }
+                if (o.error instanceof RpcErrorException) {
+                    throw (RpcErrorException) o.error;
+                }
+                last = o.error;
+                log.warn("{} failed on {}, failover: {}", method, o.endpoint.getUrl(), o.error.getMessage());
+                if (tried.size() < attempts) {
+                    running += launch(request, tried, calls, outcomes, window) ? 1 : 0;
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("hedged request interrupted", ex);
+        } finally {
+            // 取消落后的请求
+            calls.forEach(okhttp3.Call::cancel);
+        }
+        if (last instanceof IOException) {
+            throw (IOException) last;
+        } else if (last instanceof RuntimeException) {
+            throw (RuntimeException) last;
+        }
+        throw new IOException(last);
+    }
+
+    /**
+     * 选一个未尝试过的节点异步执行，结果放入outcomes；延迟从这次尝试开始计
+     *
+     * @return 是否发出了请求
+     */
+    private boolean launch(String request, List<Endpoint> tried, List<okhttp3.Call> calls, BlockingQueue<Outcome> outcomes, LatencyWindow window) {
+        Endpoint endpoint = balancer.select(tried);
+        if (endpoint == null || tried.contains(endpoint)) {
+            return false;
+        }
+        tried.add(endpoint);
+        okhttp3.Call call = newCall(endpoint, request);
+        calls.add(call);
+        HEDGE_POOL.execute(() -> {
+            // 响应字节数记在对冲线程上，带回调用线程
+            long[] bytes = RESPONSE_BYTES.get();
+            bytes[0] = 0;
+            try {
+                long begin = System.currentTimeMillis();
+                InputStream is = execute(endpoint, call);
+                window.add(System.currentTimeMillis() - begin);
+                outcomes.add(new Outcome(endpoint, is, bytes[0], null));
+            } catch (Throwable ex) {
+                outcomes.add(new Outcome(endpoint, null, 0, ex));
+            }
+        });
+        return true;
+    }
 
+    /**
+     * 一个对冲请求的结果
+     */
+    private static final class Outcome {
+        private final Endpoint endpoint;
+        private final InputStream stream;
+        private final long bytes;
+        private final Throwable error;
+
+        Outcome(Endpoint endpoint, InputStream stream, long bytes, Throwable error) {
+            this.endpoint = endpoint;
+            this.stream = stream;
+            this.bytes = bytes;
+            this.error = error;
+        }
+    }
+
+    /**
+     * http call
+     *
+     * @param endpoint
+     * @param request
+     * @return
+     */
+    private okhttp3.Call newCall(Endpoint endpoint, String request) {
         RequestBody requestBody = RequestBody.create(request, JSON_MEDIA_TYPE);
         Headers headers = buildHeaders();
-
-        String url = getUrl();
         okhttp3.Request httpRequest =
-                new okhttp3.Request.Builder().url(url).headers(headers).post(requestBody).build();
+                new okhttp3.Request.Builder().url(endpoint.getUrl()).headers(headers).post(requestBody).build();
+        return httpClient.newCall(httpRequest);
+    }
 
-        try (okhttp3.Response response = httpClient.newCall(httpRequest).execute()) {
+    /**
+     * 执行并记录节点健康状态，被取消的请求不计入
+     *
+     * @param endpoint
+     * @param call
+     * @return
+     * @throws IOException
+     */
+    private InputStream execute(Endpoint endpoint, okhttp3.Call call) throws IOException {
+        int limit = maxConcurrentPerEndpoint;
+        Semaphore permit = limit > 0 ? permits.computeIfAbsent(endpoint, e -> new Semaphore(limit)) : null;
+        if (permit != null) {
+            try {
+                permit.acquire();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                call.cancel();
+                throw new InterruptedIOException();
+            }
+        }
+        try {
+            return execute0(endpoint, call);
+        } finally {
+            if (permit != null) {
+                permit.release();
+            }
+        }
+    }
+
+    private InputStream execute0(Endpoint endpoint, okhttp3.Call call) throws IOException {
+        String url = endpoint.getUrl();
+        long begin = System.currentTimeMillis();
+        balancer.begin(endpoint);
+        boolean ok = false;
+        int code = 0;
+        long retryAfter = 0;
+        try (okhttp3.Response response = call.execute()) {
             processHeaders(response.headers());
             ResponseBody responseBody = response.body();
+            code = response.code();
             if (response.isSuccessful()) {
-                if (responseBody != null) {
-                    return buildInputStream(url, responseBody);
-                } else {
-                    return null;
+                InputStream is;
+                try {
+                    is = responseBody == null ? null : buildInputStream(url, responseBody);
+                } catch (RpcErrorException ex) {
+                    // rpc返回了error，节点本身是正常的
+                    ok = true;
+                    throw ex;
                 }
+                ok = true;
+                return is;
             } else {
-                int code = response.code();
+                retryAfter = retryAfter(response.header("Retry-After"));
                 String text = responseBody == null ? "N/A" : responseBody.string();
 
                 throw new ClientConnectionException(url + " Invalid response received: " + code + "; " + text);
             }
+        } finally {
+            if (ok) {
+                balancer.onSuccess(endpoint, System.currentTimeMillis() - begin);
+            } else if (call.isCanceled()) {
+                balancer.onCancel(endpoint);
+            } else {
+                balancer.onFailure(endpoint, code, retryAfter);
+            }
+        }
+    }
+
+    /**
+     * 请求中的method，batch时取第一个
+     *
+     * @param request
+     * @return
+     */
+    private static String method(String request) {
+        int i = request.indexOf("\"method\"");
+        if (i < 0) {
+            return null;
+        }
+        int start = request.indexOf('"', request.indexOf(':', i) + 1) + 1;
+        int end = request.indexOf('"', start);
+        return start > 0 && end > start ? request.substring(start, end) : null;
+    }
+
+    /**
+     * 请求（包括batch中的每一个）是否都是幂等的
+     *
+     * @param request
+     * @return
+     */
+    private static boolean isIdempotent(String request) {
+        int i = 0;
+        while ((i = request.indexOf("\"method\"", i)) >= 0) {
+            int start = request.indexOf('"', request.indexOf(':', i) + 1) + 1;
+            int end = request.indexOf('"', start);
+            if (start <= 0 || end <= start || !IDEMPOTENT_METHODS.contains(request.substring(start, end))) {
+                return false;
+            }
+            i = end;
+        }
+        return true;
+    }
+
+    private LatencyWindow latency(String method) {
+        return latencies.computeIfAbsent(method == null ? "" : method, k -> new LatencyWindow());
+    }
+
+    /**
+     * 幂等请求最多尝试的节点数
+     *
+     * @param maxAttempts 1为不重试
+     */
+    public void setMaxAttempts(int maxAttempts) {
+        this.maxAttempts = Math.max(maxAttempts, 1);
+    }
+
+    /**
+     * 对冲请求
+     *
+     * @param hedge         是否开启
+     * @param minHedgeDelay 最小延迟(ms)，实际延迟取该方法最近的p95，样本不足32个时不对冲
+     */
+    public void setHedge(boolean hedge, long minHedgeDelay) {
+        this.hedge = hedge;
+        this.minHedgeDelay = Math.max(minHedgeDelay, 1);
+    }
+
+    /**
+     * 每个节点最多同时在途的请求数
+     *
+     * @param maxConcurrentPerEndpoint 小于等于0不限制
+     */
+    public void setMaxConcurrentPerEndpoint(int maxConcurrentPerEndpoint) {
+        this.maxConcurrentPerEndpoint = maxConcurrentPerEndpoint;
+        this.permits.clear();
+    }
+
+    /**
+     * 所有节点合计的并发上限
+     *
+     * @return 不限制时为0
+     */
+    public int concurrency() {
+        return maxConcurrentPerEndpoint <= 0 ? 0 : maxConcurrentPerEndpoint * balancer.getEndpoints().size();
+    }
+
+    /**
+     * 最近延迟的滑动窗口
+     */
+    private static class LatencyWindow {
+        private final long[] samples = new long[256];
+        private int count;
+        private long p95 = -1;
+
+        synchronized void add(long millis) {
+            samples[count % samples.length] = millis;
+            count++;
+            if (count % 32 == 0) {
+                long[] temp = Arrays.copyOf(samples, Math.min(count, samples.length));
+                Arrays.sort(temp);
+                p95 = temp[(int) (temp.length * 0.95)];
+            }
+        }
+
+        synchronized long p95() {
+            return p95;
         }
     }
 
+    /**
+     * Retry-After(秒)
+     *
+     * @param value
+     * @return ms
+     */
+    private static long retryAfter(String value) {
+        if (value != null) {
+            try {
+                return Long.parseLong(value.trim()) * 1000;
+            } catch (NumberFormatException ex) {
+                return 0;
+            }
+        }
+        return 0;
+    }
+
     protected void processHeaders(Headers headers) {
         // Default implementation is empty
     }
 
-    private InputStream buildInputStream(String url, ResponseBody responseBody) throws IOException {
+    protected InputStream buildInputStream(String url, ResponseBody responseBody) throws IOException {
         if (includeRawResponse) {
             // we have to buffer the entire input payload, so that after processing
             // it can be re-read and used to populate the rawResponse field.
@@ -241,6 +648,7 @@ public class EuHttpService extends Service {
             }
 
             int bufferSize = (int) size;
+            RESPONSE_BYTES.get()[0] += bufferSize;
             InputStream inputStream = responseBody.byteStream();
 
             BufferedInputStream bufferedinputStream =
@@ -251,15 +659,39 @@ public class EuHttpService extends Service {
 
         } else {
             byte[] bytes = responseBody.bytes();
+            RESPONSE_BYTES.get()[0] += bytes.length;
             // 检查下result
-            JsonNode node = mapper.readTree(bytes);
-            if (!node.isArray()) {
-                JsonNode err = node.get("error");
-                if (err != null) {
-                    throw new ClientConnectionException(MessageFormat.format("{0} Invalid response received: {1}", url, err));
+            checkError(url, bytes);
+            return new ByteArrayInputStream(bytes);
+        }
+    }
+
+    /**
+     * 流式扫描顶层的error，遇到非null的result即停止，不解析整个响应
+     *
+     * @param url
+     * @param bytes
+     * @throws IOException
+     */
+    private static void checkError(String url, byte[] bytes) throws IOException {
+        try (JsonParser parser = mapper.getFactory().createParser(bytes)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return; // batch
+            }
+            String field;
+            while ((field = parser.nextFieldName()) != null) {
+                JsonToken token = parser.nextToken();
+                if ("error".equals(field)) {
+                    if (token != JsonToken.VALUE_NULL) {
+                        JsonNode err = mapper.readTree(parser);
+                        throw new RpcErrorException(MessageFormat.format("{0} Invalid response received: {1}", url, err));
+                    }
+                } else if ("result".equals(field) && token != JsonToken.VALUE_NULL) {
+                    return;
+                } else {
+                    parser.skipChildren();
                 }
             }
-            return new ByteArrayInputStream(bytes);
         }
     }
 
@@ -280,21 +712,37 @@ public class EuHttpService extends Service {
     }
 
     /**
-     * 随机选择一个url
+     * 按负载均衡策略选择一个url
      *
      * @return
      */
     public String getUrl() {
-        int r = random.nextInt(urls.size());
-        String old = urls.get(r);
-        return old;
-//        String u;
-//        if (old.indexOf('?') > 0) {
-//            u = old + "&eu=" + r;
-//        } else {
-//            u = old + "?eu=" + r;
-//        }
-//        return u;
+        return balancer.select().getUrl();
+    }
+
+    /**
+     * balancer
+     *
+     * @return
+     */
+    public EndpointBalancer getBalancer() {
+        return balancer;
+    }
+
+    /**
+     * 当前线程自上次{@link #resetResponseBytes()}以来的响应字节数
+     *
+     * @return
+     */
+    public static long responseBytes() {
+        return RESPONSE_BYTES.get()[0];
+    }
+
+    /**
+     * 重置当前线程的响应字节数
+     */
+    public static void resetResponseBytes() {
+        RESPONSE_BYTES.get()[0] = 0;
     }
 
     @Override
@@ -0,0 +1,128 @@
+package org.beykery.eu.util;
+
+import lombok.Getter;
+import org.web3j.abi.EventEncoder;
+import org.web3j.abi.datatypes.Event;
+import org.web3j.protocol.core.methods.response.Log;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * 预编译的事件集合
+ * <p>
+ * topic到event的映射、indexed参数个数和小写的合约过滤集合只计算一次，扫描时复用
+ */
+@Getter
+public class EventSet {
+
+    /**
+     * events
+     */
+    private final List<Event> events;
+
+    /**
+     * topic -> event
+     */
+    private final Map<String, Event> signatures;
+
+    /**
+     * topic -> indexed参数个数
+     */
+    private final Map<String, Integer> indexedSizes;
+
+    /**
+     * topics for eth_getLogs
+     */
+    private final String[] topics;
+
+    /**
+     * contracts for eth_getLogs
+     */
+    private final List<String> contracts;
+
+    /**
+     * 小写合约地址，为null时不过滤
+     */
+    private final Set<String> contractsFilter;
+
+    private EventSet(List<Event> events, List<String> contracts) {
+        this.events = events;
+        Map<String, Event> signatures = new HashMap<>();
+        Map<String, Integer> indexedSizes = new HashMap<>();
+        events.forEach(item -> {
+            String topic = EventEncoder.encode(item);
+            signatures.put(topic, item);
+            indexedSizes.put(topic, item.getIndexedParameters().size());
+        });
+        this.signatures = Collections.unmodifiableMap(signatures);
+        this.indexedSizes = Collections.unmodifiableMap(indexedSizes);
+        this.topics = signatures.keySet().toArray(new String[0]);
+        this.contracts = contracts == null ? Collections.EMPTY_LIST : contracts;
+        this.contractsFilter = this.contracts.isEmpty() ? null : this.contracts.stream().map(String::toLowerCase).collect(Collectors.toUnmodifiableSet());
+    }
+
+    /**
+     * compile
+     *
+     * @param events
+     * @param contracts 为null或空时不过滤合约
+     * @return
+     */
+    public static EventSet of(List<Event> events, List<String> contracts) {
+        return new EventSet(events, contracts);
+    }
+
+    /**
+     * compile
+     *
+     * @param events
+     * @return
+     */
+    public static EventSet of(List<Event> events) {
+        return new EventSet(events, null);
+    }
+
+    /**
+     * log对应的事件
+     *
+     * @param log
+     * @return 不匹配（topic、indexed参数个数或合约不符）时返回null
+     */
+    public Event match(Log log) {
+        List<String> ts = log.getTopics();
+        if (ts == null || ts.isEmpty()) {
+            return null;
+        }
+        return match(ts.get(0), ts.size() - 1, log.getAddress());
+    }
+
+    /**
+     * log对应的事件
+     *
+     * @param topic       topic0
+     * @param indexedSize 其余topic个数
+     * @param address     合约地址
+     * @return 不匹配时返回null
+     */
+    public Event match(String topic, int indexedSize, String address) {
+        Integer size = topic == null ? null : indexedSizes.get(topic);
+        if (size == null || size != indexedSize) {
+            return null;
+        }
+        if (contractsFilter != null && !accept(address)) {
+            return null;
+        }
+        return signatures.get(topic);
+    }
+
+    /**
+     * 合约是否在过滤集合中
+     *
+     * @param address
+     * @return
+     */
+    public boolean accept(String address) {
+        return contractsFilter == null || (address != null && (contractsFilter.contains(address) || contractsFilter.contains(address.toLowerCase())));
+    }
+}
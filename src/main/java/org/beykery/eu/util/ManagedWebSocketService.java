@@ -0,0 +1,317 @@
+package org.beykery.eu.util;
+
+import io.reactivex.BackpressureStrategy;
+import io.reactivex.Flowable;
+import io.reactivex.FlowableEmitter;
+import io.reactivex.disposables.Disposable;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+import org.web3j.protocol.Web3jService;
+import org.web3j.protocol.core.BatchRequest;
+import org.web3j.protocol.core.BatchResponse;
+import org.web3j.protocol.core.Request;
+import org.web3j.protocol.core.Response;
+import org.web3j.protocol.websocket.WebSocketClient;
+import org.web3j.protocol.websocket.WebSocketService;
+import org.web3j.protocol.websocket.events.Notification;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.URI;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 自动重连的 websocket service
+ * <p>
+ * 用 ping/pong 检测断线，断线后按指数退避重连，重连成功后重新发起所有订阅（newPendingTransactions、newHeads、logs 等），
+ * 调用者拿到的 Flowable 不会因为断线而结束；断线期间错过的数据可以在 {@link ReconnectListener} 里补
+ */
+@Slf4j
+public class ManagedWebSocketService implements Web3jService {
+
+    /**
+     * 重连成功的回调
+     */
+    public interface ReconnectListener {
+        /**
+         * @param disconnectedAt 断开的时间(ms)
+         * @param reconnectedAt  重连成功的时间(ms)
+         */
+        void onReconnect(long disconnectedAt, long reconnectedAt);
+    }
+
+    private final String url;
+    private final boolean includeRawResponses;
+    private final ScheduledExecutorService scheduler;
+    private final Set<Subscription<?>> subscriptions = ConcurrentHashMap.newKeySet();
+    private final AtomicBoolean reconnecting = new AtomicBoolean();
+
+    /**
+     * ping 间隔(s)，超过该时间收不到 pong 视为断线
+     */
+    @Setter
+    private int heartbeat = 10;
+
+    /**
+     * 第一次重连的等待(ms)
+     */
+    @Setter
+    private long initialBackoff = 500;
+
+    /**
+     * 最长的重连等待(ms)
+     */
+    @Setter
+    private long maxBackoff = 30_000;
+
+    /**
+     * 有订阅但超过该时间(ms)没有收到任何消息时主动重连，小于等于0不检测；没有订阅时不检测
+     */
+    @Setter
+    private long staleTimeout = 60_000;
+
+    @Setter
+    private ReconnectListener reconnectListener;
+
+    /**
+     * 重连成功的次数
+     */
+    @Getter
+    private final AtomicLong reconnects = new AtomicLong();
+
+    private volatile WebSocketService delegate;
+    private volatile boolean connected;
+    private volatile boolean closed;
+    private volatile long lastMessage;
+    private volatile long disconnectedAt;
+
+    public ManagedWebSocketService(String url, boolean includeRawResponses) {
+        this.url = url;
+        this.includeRawResponses = includeRawResponses;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r);
+            t.setName("thread - ws reconnect");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    public ManagedWebSocketService(String url) {
+        this(url, false);
+    }
+
+    /**
+     * 第一次连接，失败直接抛出
+     *
+     * @throws ConnectException
+     */
+    public void connect() throws ConnectException {
+        delegate = open();
+        connected = true;
+        scheduler.scheduleWithFixedDelay(this::checkStale, 1, 1, TimeUnit.SECONDS);
+    }
+
+    public boolean isConnected() {
+        return connected;
+    }
+
+    private WebSocketService open() throws ConnectException {
+        return open(new WebSocketClient(URI.create(url)));
+    }
+
+    private WebSocketService open(WebSocketClient client) throws ConnectException {
+        client.setConnectionLostTimeout(heartbeat);
+        WebSocketService ws = new WebSocketService(client, includeRawResponses);
+        try {
+            ws.connect(m -> lastMessage = System.currentTimeMillis(), ex -> {
+            }, () -> onClose(ws));
+        } catch (ConnectException ex) {
+            ws.close();
+            throw ex;
+        }
+        lastMessage = System.currentTimeMillis();
+        return ws;
+    }
+
+    private void onClose(WebSocketService ws) {
+        if (closed || ws != delegate) {
+            return;
+        }
+        connected = false;
+        disconnectedAt = System.currentTimeMillis();
+        log.warn("websocket {} closed, reconnecting", url);
+        scheduleReconnect(initialBackoff);
+    }
+
+    private void scheduleReconnect(long delay) {
+        if (!closed && reconnecting.compareAndSet(false, true)) {
+            scheduler.schedule(() -> reconnect(delay), jitter(delay), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void reconnect(long delay) {
+        if (closed) {
+            return;
+        }
+        try {
+            WebSocketService old = delegate;
+            WebSocketClient client = new WebSocketClient(URI.create(url));
+            WebSocketService ws = open(client);
+            delegate = ws;
+            if (old != null) {
+                old.close();
+            }
+            connected = true;
+            reconnecting.set(false);
+            // 新连接在赋值 delegate 或清除 reconnecting 之前就断开时，onClose 的重连会被丢掉，这里补上
+            if (!client.isOpen()) {
+                onClose(ws);
+                return;
+            }
+            reconnects.incrementAndGet();
+            subscriptions.forEach(this::attach);
+            log.info("websocket {} reconnected, {} subscriptions restored", url, subscriptions.size());
+            ReconnectListener listener = reconnectListener;
+            if (listener != null) {
+                listener.onReconnect(disconnectedAt, System.currentTimeMillis());
+            }
+        } catch (Exception ex) {
+            long next = Math.min(delay * 2, maxBackoff);
+            log.warn("websocket {} reconnect failed : {}, retry in {} ms", url, ex.getMessage(), next);
+            scheduler.schedule(() -> reconnect(next), jitter(next), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * 连接还在但长时间没有消息（节点停止推送），主动断开重连
+     */
+    private void checkStale() {
+        WebSocketService ws = delegate;
+        if (staleTimeout > 0 && connected && !subscriptions.isEmpty() && System.currentTimeMillis() - lastMessage > staleTimeout) {
+            log.warn("websocket {} silent for {} ms, reconnecting", url, System.currentTimeMillis() - lastMessage);
+            onClose(ws);
+        }
+    }
+
+    private static long jitter(long delay) {
+        return delay + ThreadLocalRandom.current().nextLong(delay / 4 + 1);
+    }
+
+    private WebSocketService current() throws IOException {
+        WebSocketService ws = delegate;
+        if (ws == null || closed) {
+            throw new IOException("websocket not connected");
+        }
+        return ws;
+    }
+
+    @Override
+    public <T extends Response> T send(Request request, Class<T> responseType) throws IOException {
+        return current().send(request, responseType);
+    }
+
+    @Override
+    public <T extends Response> CompletableFuture<T> sendAsync(Request request, Class<T> responseType) {
+        try {
+            return current().sendAsync(request, responseType);
+        } catch (IOException ex) {
+            return CompletableFuture.failedFuture(ex);
+        }
+    }
+
+    @Override
+    public BatchResponse sendBatch(BatchRequest batchRequest) throws IOException {
+        return current().sendBatch(batchRequest);
+    }
+
+    @Override
+    public CompletableFuture<BatchResponse> sendBatchAsync(BatchRequest batchRequest) {
+        try {
+            return current().sendBatchAsync(batchRequest);
+        } catch (IOException ex) {
+            return CompletableFuture.failedFuture(ex);
+        }
+    }
+
+    @Override
+    public <T extends Notification<?>> Flowable<T> subscribe(Request request, String unsubscribeMethod, Class<T> responseType) {
+        return Flowable.create(emitter -> {
+            Subscription<T> sub = new Subscription<>(request, unsubscribeMethod, responseType, emitter);
+            subscriptions.add(sub);
+            emitter.setCancellable(() -> {
+                subscriptions.remove(sub);
+                sub.dispose();
+            });
+            attach(sub);
+        }, BackpressureStrategy.BUFFER);
+    }
+
+    /**
+     * 在当前连接上订阅
+     *
+     * @param sub
+     * @param <T>
+     */
+    private <T extends Notification<?>> void attach(Subscription<T> sub) {
+        WebSocketService ws = delegate;
+        if (ws == null || !connected) {
+            return;
+        }
+        synchronized (sub) {
+            if (sub.ws == ws || sub.emitter.isCancelled()) {
+                return;
+            }
+            sub.dispose();
+            sub.ws = ws;
+            sub.inner = ws.subscribe(sub.request, sub.unsubscribeMethod, sub.type).subscribe(
+                    sub.emitter::onNext,
+                    ex -> log.warn("subscription {} interrupted : {}", sub.request.getMethod(), ex.getMessage())
+            );
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        connected = false;
+        scheduler.shutdownNow();
+        subscriptions.forEach(s -> s.emitter.onComplete());
+        subscriptions.clear();
+        WebSocketService ws = delegate;
+        if (ws != null) {
+            ws.close();
+        }
+    }
+
+    private static final class Subscription<T extends Notification<?>> {
+        private final Request<?, ?> request;
+        private final String unsubscribeMethod;
+        private final Class<T> type;
+        private final FlowableEmitter<T> emitter;
+        private WebSocketService ws;
+        private Disposable inner;
+
+        Subscription(Request<?, ?> request, String unsubscribeMethod, Class<T> type, FlowableEmitter<T> emitter) {
+            this.request = request;
+            this.unsubscribeMethod = unsubscribeMethod;
+            this.type = type;
+            this.emitter = emitter;
+        }
+
+        synchronized void dispose() {
+            if (inner != null) {
+                inner.dispose();
+                inner = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,257 @@
+package org.beykery.eu.util;
+
+import org.web3j.abi.FunctionEncoder;
+import org.web3j.abi.FunctionReturnDecoder;
+import org.web3j.abi.datatypes.Function;
+import org.web3j.abi.datatypes.Type;
+import org.web3j.protocol.Web3j;
+import org.web3j.protocol.core.BatchRequest;
+import org.web3j.protocol.core.DefaultBlockParameter;
+import org.web3j.protocol.core.DefaultBlockParameterName;
+import org.web3j.protocol.core.Request;
+import org.web3j.protocol.core.methods.request.Transaction;
+import org.web3j.protocol.core.methods.response.EthCall;
+import org.web3j.utils.Numeric;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Multicall3 aggregate3，把多个合约的多个只读调用合成一个 eth_call
+ * <p>
+ * 调用数据超过 maxCalldata 时分成多个 eth_call，放在一个 json-rpc batch 里发送；
+ * 每个调用允许单独失败，结果里带 success 标志
+ */
+public class Multicall {
+
+    /**
+     * Multicall3 在绝大多数链上的地址
+     */
+    public static final String MULTICALL3 = "0xcA11bde05977b3631167028862bE2a173976CA11";
+
+    /**
+     * aggregate3((address,bool,bytes)[])
+     */
+    private static final String AGGREGATE3 = "82ad56cb";
+
+    /**
+     * 默认每个 eth_call 的调用数据上限(bytes)
+     */
+    public static final int DEFAULT_MAX_CALLDATA = 64 * 1024;
+
+    private final Web3j web3j;
+    private final String address;
+    private final List<String> targets = new ArrayList<>();
+    private final List<Function> functions = new ArrayList<>();
+    private final List<byte[]> calldata = new ArrayList<>();
+    private DefaultBlockParameter block = DefaultBlockParameterName.LATEST;
+    private int maxCalldata = DEFAULT_MAX_CALLDATA;
+
+    public Multicall(Web3j web3j) {
+        this(web3j, MULTICALL3);
+    }
+
+    /**
+     * @param web3j
+     * @param address multicall3 合约地址
+     */
+    public Multicall(Web3j web3j, String address) {
+        this.web3j = web3j;
+        this.address = address;
+    }
+
+    /**
+     * 添加调用
+     *
+     * @param target   合约地址
+     * @param function
+     * @return
+     */
+    public Multicall add(String target, Function function) {
+        targets.add(target);
+        functions.add(function);
+        calldata.add(Numeric.hexStringToByteArray(FunctionEncoder.encode(function)));
+        return this;
+    }
+
+    /**
+     * 固定在某个块上调用，保证结果一致
+     *
+     * @param number
+     * @return
+     */
+    public Multicall block(long number) {
+        return block(DefaultBlockParameter.valueOf(BigInteger.valueOf(number)));
+    }
+
+    public Multicall block(DefaultBlockParameter block) {
+        this.block = block == null ? DefaultBlockParameterName.LATEST : block;
+        return this;
+    }
+
+    /**
+     * 每个 eth_call 的调用数据上限
+     *
+     * @param maxCalldata bytes
+     * @return
+     */
+    public Multicall maxCalldata(int maxCalldata) {
+        this.maxCalldata = Math.max(maxCalldata, 1);
+        return this;
+    }
+
+    public int size() {
+        return functions.size();
+    }
+
+    /**
+     * 执行，结果与添加顺序一致
+     *
+     * @return
+     * @throws IOException
+     */
+    public List<CallResult> execute() throws IOException {
+        if (functions.isEmpty()) {
+            return Collections.EMPTY_LIST;
+        }
+        List<int[]> chunks = chunks();
+        List<EthCall> responses;
+        if (chunks.size() == 1) {
+            responses = List.of(call(0, functions.size()).send());
+        } else {
+            BatchRequest batch = web3j.newBatch();
+            for (int[] c : chunks) {
+                batch.add(call(c[0], c[1]));
+            }
+            responses = (List<EthCall>) batch.send().getResponses();
+        }
+        List<CallResult> results = new ArrayList<>(functions.size());
+        for (int i = 0; i < chunks.size(); i++) {
+            EthCall response = responses.get(i);
+            if (response.hasError() || response.isReverted()) {
+                throw new IOException("multicall failed : " + (response.hasError() ? response.getError().getMessage() : response.getRevertReason()));
+            }
+            decode(Numeric.hexStringToByteArray(response.getValue()), chunks.get(i)[0], results);
+        }
+        return results;
+    }
+
+    /**
+     * 按调用数据大小分块
+     *
+     * @return [from, to)
+     */
+    private List<int[]> chunks() {
+        List<int[]> chunks = new ArrayList<>();
+        int start = 0;
+        int size = 0;
+        for (int i = 0; i < calldata.size(); i++) {
+            int s = 32 * 5 + pad(calldata.get(i).length);
+            if (i > start && size + s > maxCalldata) {
+                chunks.add(new int[]{start, i});
+                start = i;
+                size = 0;
+            }
+            size += s;
+        }
+        chunks.add(new int[]{start, calldata.size()});
+        return chunks;
+    }
+
+    private Request<?, EthCall> call(int from, int to) {
+        String data = encode(from, to);
+        return web3j.ethCall(Transaction.createEthCallTransaction(EthContractUtil.DEFAULT_FROM, address, data), block);
+    }
+
+    /**
+     * abi 编码 aggregate3(calls[from, to))
+     *
+     * @param from
+     * @param to
+     * @return
+     */
+    private String encode(int from, int to) {
+        int n = to - from;
+        int size = 4 + 32 * 2 + 32 * n;
+        for (int i = from; i < to; i++) {
+            size += 32 * 4 + pad(calldata.get(i).length);
+        }
+        byte[] out = new byte[size];
+        System.arraycopy(Numeric.hexStringToByteArray(AGGREGATE3), 0, out, 0, 4);
+        int p = 4;
+        word(out, p, 32);
+        word(out, p + 32, n);
+        int head = p + 64;
+        int tail = head + 32 * n;
+        for (int i = from; i < to; i++) {
+            word(out, head, tail - (p + 64));
+            head += 32;
+            byte[] target = Numeric.hexStringToByteArray(targets.get(i));
+            System.arraycopy(target, 0, out, tail + 32 - target.length, target.length);
+            word(out, tail + 32, 1);
+            word(out, tail + 64, 96);
+            byte[] cd = calldata.get(i);
+            word(out, tail + 96, cd.length);
+            System.arraycopy(cd, 0, out, tail + 128, cd.length);
+            tail += 128 + pad(cd.length);
+        }
+        return Numeric.toHexString(out);
+    }
+
+    /**
+     * 解码 (bool success, bytes returnData)[]
+     *
+     * @param out
+     * @param from
+     * @param results
+     */
+    private void decode(byte[] out, int from, List<CallResult> results) throws IOException {
+        int array = (int) word(out, 0);
+        int n = (int) word(out, array);
+        int base = array + 32;
+        for (int i = 0; i < n; i++) {
+            int tuple = base + (int) word(out, base + 32 * i);
+            boolean success = word(out, tuple) != 0;
+            int bytes = tuple + (int) word(out, tuple + 32);
+            int len = (int) word(out, bytes);
+            String raw = Numeric.toHexString(out, bytes + 32, len, true);
+            Function f = functions.get(from + i);
+            List<Type> values = Collections.EMPTY_LIST;
+            if (success && len > 0) {
+                try {
+                    values = FunctionReturnDecoder.decode(raw, f.getOutputParameters());
+                } catch (RuntimeException ex) {
+                    success = false;
+                }
+            } else if (success && !f.getOutputParameters().isEmpty()) {
+                // 目标不是合约时call会成功但没有返回
+                success = false;
+            }
+            results.add(new CallResult(success, values, raw, null));
+        }
+    }
+
+    private static int pad(int len) {
+        return (len + 31) / 32 * 32;
+    }
+
+    private static void word(byte[] out, int offset, long v) {
+        for (int i = 0; i < 8; i++) {
+            out[offset + 31 - i] = (byte) (v >>> (8 * i));
+        }
+    }
+
+    private static long word(byte[] in, int offset) throws IOException {
+        if (offset < 0 || offset + 32 > in.length) {
+            throw new IOException("bad multicall response");
+        }
+        long v = 0;
+        for (int i = 24; i < 32; i++) {
+            v = (v << 8) | (in[offset + i] & 0xFF);
+        }
+        return v;
+    }
+}
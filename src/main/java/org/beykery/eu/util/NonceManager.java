@@ -0,0 +1,186 @@
+package org.beykery.eu.util;
+
+import lombok.extern.slf4j.Slf4j;
+import org.web3j.protocol.Web3j;
+import org.web3j.protocol.core.DefaultBlockParameterName;
+import org.web3j.protocol.core.Response;
+import org.web3j.protocol.core.methods.response.EthGetTransactionCount;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 本地 nonce 分配
+ * <p>
+ * 每个地址第一次使用时从链上同步（pending），之后原子递增分配；
+ * 发送失败时调用 {@link #onRejected} 或 {@link #onUnknown} 归还nonce，否则后面的交易都会因为nonce空缺卡在节点的队列里
+ */
+@Slf4j
+public class NonceManager {
+
+    private final Web3j web3j;
+
+    /**
+     * 地址(小写) -> 下一个nonce，未同步时为-1
+     */
+    private final Map<String, AtomicLong> nonces = new ConcurrentHashMap<>();
+
+    public NonceManager(Web3j web3j) {
+        this.web3j = web3j;
+    }
+
+    /**
+     * 分配下一个nonce
+     *
+     * @param address
+     * @return
+     * @throws IOException
+     */
+    public BigInteger next(String address) throws IOException {
+        AtomicLong nonce = nonces.computeIfAbsent(address.toLowerCase(), k -> new AtomicLong(-1));
+        while (true) {
+            long n = nonce.get();
+            if (n < 0) {
+                synchronized (nonce) {
+                    if (nonce.get() < 0) {
+                        nonce.set(fetch(address));
+                    }
+                }
+                continue;
+            }
+            if (nonce.compareAndSet(n, n + 1)) {
+                return BigInteger.valueOf(n);
+            }
+        }
+    }
+
+    /**
+     * 下一个将分配的nonce（不分配）
+     *
+     * @param address
+     * @return 未同步时为-1
+     */
+    public long peek(String address) {
+        AtomicLong nonce = nonces.get(address.toLowerCase());
+        return nonce == null ? -1 : nonce.get();
+    }
+
+    /**
+     * 下次分配前重新从链上同步
+     *
+     * @param address
+     */
+    public void resync(String address) {
+        AtomicLong nonce = nonces.get(address.toLowerCase());
+        if (nonce != null) {
+            nonce.set(-1);
+        }
+    }
+
+    /**
+     * 交易被节点拒绝：nonce相关的错误重新同步，已在交易池中的不处理，其它错误归还该nonce
+     *
+     * @param address
+     * @param nonce   被拒绝交易的nonce
+     * @param message 错误信息
+     */
+    public void onRejected(String address, BigInteger nonce, String message) {
+        if (onError(address, message) || isKnown(message)) {
+            return;
+        }
+        log.warn("{} transaction with nonce {} rejected : {}, release it", address, nonce, message);
+        release(address, nonce.longValue());
+    }
+
+    /**
+     * 发送结果未知（网络错误），交易可能已到节点，下次分配前重新同步
+     *
+     * @param address
+     */
+    public void onUnknown(String address) {
+        resync(address);
+    }
+
+    /**
+     * 归还nonce：是最后分配的直接回退，否则后面的nonce已分配出去，下次分配前重新同步
+     *
+     * @param address
+     * @param n
+     */
+    private void release(String address, long n) {
+        AtomicLong nonce = nonces.get(address.toLowerCase());
+        if (nonce != null && !nonce.compareAndSet(n + 1, n) && nonce.get() >= 0) {
+            nonce.set(-1);
+        }
+    }
+
+    /**
+     * 发送出错，nonce相关的错误触发重新同步
+     *
+     * @param address
+     * @param message 错误信息
+     * @return 是否nonce相关的错误
+     */
+    public boolean onError(String address, String message) {
+        if (isNonceError(message)) {
+            log.warn("{} nonce error : {}, resync", address, message);
+            resync(address);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * 发送结果出错时重新同步
+     *
+     * @param address
+     * @param response
+     * @return 是否nonce相关的错误
+     */
+    public boolean onError(String address, Response<?> response) {
+        return response != null && response.hasError() && onError(address, response.getError().getMessage());
+    }
+
+    /**
+     * 是否nonce相关的错误
+     *
+     * @param message
+     * @return
+     */
+    public static boolean isNonceError(String message) {
+        if (message == null) {
+            return false;
+        }
+        String m = message.toLowerCase();
+        return m.contains("nonce too low")
+                || m.contains("nonce too high")
+                || m.contains("invalid nonce")
+                || m.contains("replacement transaction underpriced")
+                || m.contains("replacement underpriced");
+    }
+
+    /**
+     * 交易已在交易池中，nonce已被使用
+     *
+     * @param message
+     * @return
+     */
+    public static boolean isKnown(String message) {
+        if (message == null) {
+            return false;
+        }
+        String m = message.toLowerCase();
+        return m.contains("already known") || m.contains("known transaction") || m.contains("already imported");
+    }
+
+    private long fetch(String address) throws IOException {
+        EthGetTransactionCount count = web3j.ethGetTransactionCount(address, DefaultBlockParameterName.PENDING).send();
+        if (count.hasError()) {
+            throw new IOException("fetch nonce failed : " + count.getError().getMessage());
+        }
+        return count.getTransactionCount().longValue();
+    }
+}
@@ -0,0 +1,202 @@
+package org.beykery.eu.util;
+
+import lombok.extern.slf4j.Slf4j;
+import org.web3j.crypto.RawTransaction;
+import org.web3j.protocol.Web3j;
+import org.web3j.protocol.core.BatchRequest;
+import org.web3j.protocol.core.methods.response.EthSendTransaction;
+
+import java.io.Closeable;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * 流水线发送交易
+ * <p>
+ * 提交的已签名交易由后台线程收集，最多 maxBatch 个、最多等待 linger 毫秒后合成一个 eth_sendRawTransaction 的 json-rpc batch 发送；
+ * 配合 {@link NonceManager} 时本地分配nonce，交易被拒绝或结果未知时归还nonce
+ */
+@Slf4j
+public class PipelinedSender implements Closeable {
+
+    private final Web3j web3j;
+    private final NonceManager nonces;
+    private final int maxBatch;
+    private final long linger;
+    private final LinkedBlockingQueue<Pending> queue = new LinkedBlockingQueue<>();
+    private final Thread thread;
+    private volatile boolean running = true;
+
+    /**
+     * @param web3j
+     * @param nonces   nonce 分配
+     * @param maxBatch 每个batch最多的交易数
+     * @param linger   收到第一笔后最多等待的时间(ms)
+     */
+    public PipelinedSender(Web3j web3j, NonceManager nonces, int maxBatch, long linger) {
+        this.web3j = web3j;
+        this.nonces = nonces;
+        this.maxBatch = Math.max(maxBatch, 1);
+        this.linger = Math.max(linger, 0);
+        this.thread = new Thread(this::loop);
+        this.thread.setName("thread - tx sender");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    public PipelinedSender(Web3j web3j) {
+        this(web3j, new NonceManager(web3j), 100, 2);
+    }
+
+    public NonceManager getNonces() {
+        return nonces;
+    }
+
+    /**
+     * 发送已签名交易
+     *
+     * @param signedTransaction
+     * @return
+     */
+    public CompletableFuture<EthSendTransaction> submit(String signedTransaction) {
+        return submit(signedTransaction, null, null);
+    }
+
+    private CompletableFuture<EthSendTransaction> submit(String signedTransaction, String from, BigInteger nonce) {
+        Pending p = new Pending(signedTransaction, from, nonce);
+        if (!running) {
+            p.future.completeExceptionally(new IllegalStateException("sender closed"));
+        } else {
+            queue.offer(p);
+        }
+        return p.future;
+    }
+
+    /**
+     * 分配nonce、签名并发送
+     *
+     * @param signer
+     * @param builder nonce -> 待签名交易
+     * @param chainId
+     * @return
+     */
+    public CompletableFuture<EthSendTransaction> send(Signer signer, Function<BigInteger, RawTransaction> builder, long chainId) {
+        BigInteger nonce = null;
+        try {
+            nonce = nonces.next(signer.getAddress());
+            String signed = signer.sign(builder.apply(nonce), chainId);
+            CompletableFuture<EthSendTransaction> future = submit(signed, signer.getAddress(), nonce);
+            if (future.isCompletedExceptionally()) {
+                nonces.onRejected(signer.getAddress(), nonce, "sender closed");
+            }
+            return future;
+        } catch (Exception ex) {
+            if (nonce != null) {
+                nonces.onRejected(signer.getAddress(), nonce, ex.getMessage());
+            }
+            return CompletableFuture.failedFuture(ex);
+        }
+    }
+
+    private void loop() {
+        List<Pending> batch = new ArrayList<>(maxBatch);
+        while (running || !queue.isEmpty()) {
+            try {
+                Pending first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(linger);
+                while (batch.size() < maxBatch) {
+                    long wait = deadline - System.nanoTime();
+                    Pending p = wait > 0 ? queue.poll(wait, TimeUnit.NANOSECONDS) : queue.poll();
+                    if (p == null) {
+                        break;
+                    }
+                    batch.add(p);
+                }
+                flush(batch);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                break;
+            } finally {
+                batch.clear();
+            }
+        }
+        Pending p;
+        while ((p = queue.poll()) != null) {
+            p.future.completeExceptionally(new IllegalStateException("sender closed"));
+        }
+    }
+
+    private void flush(List<Pending> batch) {
+        try {
+            List<EthSendTransaction> responses;
+            if (batch.size() == 1) {
+                responses = List.of(web3j.ethSendRawTransaction(batch.get(0).signed).send());
+            } else {
+                BatchRequest request = web3j.newBatch();
+                batch.forEach(p -> request.add(web3j.ethSendRawTransaction(p.signed)));
+                responses = (List<EthSendTransaction>) request.send().getResponses();
+            }
+            for (int i = 0; i < batch.size(); i++) {
+                Pending p = batch.get(i);
+                EthSendTransaction r = i < responses.size() ? responses.get(i) : null;
+                if (r == null) {
+                    if (p.from != null) {
+                        nonces.onUnknown(p.from);
+                    }
+                    p.future.completeExceptionally(new IllegalStateException("no response"));
+                    continue;
+                }
+                if (p.from != null && r.hasError()) {
+                    nonces.onRejected(p.from, p.nonce, r.getError().getMessage());
+                }
+                p.future.complete(r);
+            }
+        } catch (Exception ex) {
+            log.error("send {} transactions error", batch.size(), ex);
+            for (Pending p : batch) {
+                if (p.from != null) {
+                    if (ex instanceof RpcErrorException) {
+                        // 单笔发送时节点返回的错误，交易被拒绝
+                        nonces.onRejected(p.from, p.nonce, ex.getMessage());
+                    } else {
+                        // 结果未知，交易可能已到节点
+                        nonces.onUnknown(p.from);
+                    }
+                }
+                p.future.completeExceptionally(ex);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        try {
+            thread.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static final class Pending {
+        private final String signed;
+        private final String from;
+        private final BigInteger nonce;
+        private final CompletableFuture<EthSendTransaction> future = new CompletableFuture<>();
+
+        Pending(String signed, String from, BigInteger nonce) {
+            this.signed = signed;
+            this.from = from;
+            this.nonce = nonce;
+        }
+    }
+}
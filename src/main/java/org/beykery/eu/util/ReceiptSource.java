@@ -0,0 +1,192 @@
+package org.beykery.eu.util;
+
+import lombok.extern.slf4j.Slf4j;
+import org.web3j.protocol.Web3j;
+import org.web3j.protocol.Web3jService;
+import org.web3j.protocol.core.DefaultBlockParameter;
+import org.web3j.protocol.core.Request;
+import org.web3j.protocol.core.methods.response.EthGetBlockReceipts;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * logFromTx 模式下 receipt 的来源
+ * <p>
+ * 第一次使用时探测节点是否支持 eth_getBlockReceipts / parity_getBlockReceipts，结果按 web3j 缓存
+ */
+@Slf4j
+public enum ReceiptSource {
+
+    /**
+     * eth_getBlockReceipts，一个块一次请求
+     */
+    ETH_BLOCK_RECEIPTS("eth_getBlockReceipts"),
+
+    /**
+     * parity_getBlockReceipts（openethereum、早期 erigon/nethermind）
+     */
+    PARITY_BLOCK_RECEIPTS("parity_getBlockReceipts"),
+
+    /**
+     * eth_getTransactionReceipt，一笔交易一次请求
+     */
+    TRANSACTION_RECEIPT(null);
+
+    /**
+     * web3j -> 探测结果
+     */
+    private static final Map<Web3j, ReceiptSource> PROBED = Collections.synchronizedMap(new WeakHashMap<>());
+
+    /**
+     * web3j -> 探测无法确定后，下次探测的时间(ms)
+     */
+    private static final Map<Web3j, Long> RETRY_AT = Collections.synchronizedMap(new WeakHashMap<>());
+
+    /**
+     * 探测无法确定后多久再探测(ms)
+     */
+    private static volatile long probeBackoff = 60_000;
+
+    /**
+     * rpc method
+     */
+    private final String method;
+
+    ReceiptSource(String method) {
+        this.method = method;
+    }
+
+    /**
+     * 是否按块取receipt
+     *
+     * @return
+     */
+    public boolean isBlock() {
+        return method != null;
+    }
+
+    /**
+     * 取块receipts的请求
+     *
+     * @param web3j
+     * @param block
+     * @return 当前web3j不支持时为null
+     */
+    public Request<?, EthGetBlockReceipts> request(Web3j web3j, long block) {
+        DefaultBlockParameter param = DefaultBlockParameter.valueOf(BigInteger.valueOf(block));
+        if (this == ETH_BLOCK_RECEIPTS) {
+            return web3j.ethGetBlockReceipts(param);
+        }
+        Web3jService service = EthContractUtil.service(web3j);
+        if (this == PARITY_BLOCK_RECEIPTS && service != null) {
+            return new Request<>(method, List.of(param.getValue()), service, EthGetBlockReceipts.class);
+        }
+        return null;
+    }
+
+    /**
+     * 指定web3j使用的来源，跳过探测
+     *
+     * @param web3j
+     * @param source
+     */
+    public static void set(Web3j web3j, ReceiptSource source) {
+        if (source == null) {
+            PROBED.remove(web3j);
+            RETRY_AT.remove(web3j);
+        } else {
+            PROBED.put(web3j, source);
+        }
+    }
+
+    /**
+     * 探测无法确定后多久再探测
+     *
+     * @param millis
+     */
+    public static void setProbeBackoff(long millis) {
+        probeBackoff = Math.max(millis, 0);
+    }
+
+    /**
+     * 探测（有缓存）
+     * <p>
+     * 只有节点明确回答方法不存在（-32601 / not supported）时才记为不支持；其它错误（限流、超时等）退回按交易取，
+     * probeBackoff 之后再重新探测
+     *
+     * @param web3j
+     * @param block 用来探测的块
+     * @return
+     * @throws IOException 网络错误，不缓存
+     */
+    public static ReceiptSource of(Web3j web3j, long block) throws IOException {
+        ReceiptSource source = PROBED.get(web3j);
+        if (source == null) {
+            source = TRANSACTION_RECEIPT;
+            Long retryAt = RETRY_AT.get(web3j);
+            if (retryAt != null && System.currentTimeMillis() < retryAt) {
+                return source;
+            }
+            boolean certain = true;
+            for (ReceiptSource s : new ReceiptSource[]{ETH_BLOCK_RECEIPTS, PARITY_BLOCK_RECEIPTS}) {
+                Boolean supported = s.supported(web3j, block);
+                if (supported == null) {
+                    certain = false;
+                } else if (supported) {
+                    source = s;
+                    certain = true;
+                    break;
+                }
+            }
+            if (certain) {
+                log.info("receipt source : {}", source);
+                PROBED.put(web3j, source);
+                RETRY_AT.remove(web3j);
+            } else {
+                log.warn("receipt source probe inconclusive, use {} for {} ms", source, probeBackoff);
+                RETRY_AT.put(web3j, System.currentTimeMillis() + probeBackoff);
+            }
+        }
+        return source;
+    }
+
+    /**
+     * @return null 表示无法确定
+     */
+    private Boolean supported(Web3j web3j, long block) throws IOException {
+        Request<?, EthGetBlockReceipts> request = request(web3j, block);
+        if (request == null) {
+            return false;
+        }
+        try {
+            EthGetBlockReceipts response = request.send();
+            if (response.hasError()) {
+                return notFound(response.getError().getCode() + " " + response.getError().getMessage()) ? false : null;
+            }
+            return response.getBlockReceipts().isPresent() ? true : null;
+        } catch (UnsupportedOperationException ex) {
+            return false;
+        } catch (RpcErrorException ex) {
+            return notFound(ex.getMessage()) ? false : null;
+        }
+    }
+
+    /**
+     * 方法不存在类的错误
+     *
+     * @param error
+     * @return
+     */
+    static boolean notFound(String error) {
+        if (error == null) {
+            return false;
+        }
+        String e = error.toLowerCase();
+        return e.contains("-32601") || e.contains("not supported") || e.contains("method not found");
+    }
+}
@@ -0,0 +1,339 @@
+package org.beykery.eu.util;
+
+import lombok.Getter;
+import org.beykery.eu.event.CurrentBlockProvider;
+import org.web3j.protocol.Service;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 录制/回放 json-rpc 的 web3j service
+ * <p>
+ * record 模式包装 EuHttpService，把请求/响应对追加到 gzip 文件（int长度 + utf8 字节）；
+ * replay 模式从文件读取，按去掉 id 后的请求体匹配响应，同一请求录到多次则依次返回，最后一个重复使用。
+ * 回放可以设置延迟和抖动，也可以模拟一个按倍速推进的链头（eth_blockNumber、latest 块以及 {@link #currentBlockProvider()}）。
+ * <p>
+ * 注意：eth_getLogs 按区间匹配，回放时 scanner 的 step 需与录制时一致（例如固定 step 的 StepController）
+ */
+public class ReplayWeb3jService extends Service {
+
+    /**
+     * 文件头
+     */
+    private static final int MAGIC = 0x45555250;
+
+    /**
+     * 请求id
+     */
+    private static final Pattern ID = Pattern.compile("\"id\"\\s*:\\s*\\d+\\s*,?");
+
+    /**
+     * record 模式的被包装者
+     */
+    private final EuHttpService delegate;
+
+    /**
+     * record 输出
+     */
+    private final DataOutputStream out;
+
+    /**
+     * 请求 -> 录制的响应
+     */
+    private final Map<String, byte[][]> recordings;
+
+    /**
+     * 请求 -> 已回放的次数
+     */
+    private final Map<String, AtomicInteger> cursors = new ConcurrentHashMap<>();
+
+    /**
+     * 录制/回放的请求数
+     */
+    @Getter
+    private final AtomicLong count = new AtomicLong();
+
+    /**
+     * 回放时未录制的请求数
+     */
+    @Getter
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * 回放延迟(ms)
+     */
+    private volatile long latency;
+
+    /**
+     * 回放延迟抖动(ms)
+     */
+    private volatile long jitter;
+
+    /**
+     * 模拟链头，null表示不模拟
+     */
+    private volatile Head head;
+
+    private ReplayWeb3jService(EuHttpService delegate, DataOutputStream out, Map<String, byte[][]> recordings) {
+        super(false);
+        this.delegate = delegate;
+        this.out = out;
+        this.recordings = recordings;
+    }
+
+    /**
+     * 录制，经过 delegate 的请求/响应对追加到 file
+     *
+     * @param delegate
+     * @param file
+     * @return
+     * @throws IOException
+     */
+    public static ReplayWeb3jService record(EuHttpService delegate, Path file) throws IOException {
+        OutputStream os = Files.newOutputStream(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(os, 1 << 16), 1 << 16));
+        out.writeInt(MAGIC);
+        return new ReplayWeb3jService(delegate, out, null);
+    }
+
+    /**
+     * 回放 file 中录制的请求
+     *
+     * @param file
+     * @return
+     * @throws IOException
+     */
+    public static ReplayWeb3jService replay(Path file) throws IOException {
+        Map<String, List<byte[]>> map = new HashMap<>();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(Files.newInputStream(file), 1 << 16), 1 << 16))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("not a replay file : " + file);
+            }
+            while (true) {
+                byte[] request;
+                try {
+                    request = read(in);
+                } catch (EOFException ex) {
+                    break;
+                }
+                byte[] response = read(in);
+                map.computeIfAbsent(key(new String(request, StandardCharsets.UTF_8)), k -> new ArrayList<>()).add(response);
+            }
+        }
+        Map<String, byte[][]> recordings = new HashMap<>(map.size() * 2);
+        map.forEach((k, v) -> recordings.put(k, v.toArray(new byte[0][])));
+        return new ReplayWeb3jService(null, null, recordings);
+    }
+
+    /**
+     * 是否 record 模式
+     *
+     * @return
+     */
+    public boolean isRecording() {
+        return delegate != null;
+    }
+
+    /**
+     * 回放延迟
+     *
+     * @param latency 固定延迟(ms)
+     * @param jitter  随机附加延迟上限(ms)
+     * @return
+     */
+    public ReplayWeb3jService latency(long latency, long jitter) {
+        this.latency = Math.max(latency, 0);
+        this.jitter = Math.max(jitter, 0);
+        return this;
+    }
+
+    /**
+     * 模拟链头：从 start 开始，每 blockTime/speed 毫秒前进一个块，到 end 停止
+     *
+     * @param start     起始块高
+     * @param timestamp 起始块时间戳(s)
+     * @param blockTime 出块间隔(ms)
+     * @param speed     倍速，例如 10 表示 10 倍于真实出块速度
+     * @param end       最大块高，<=0 表示不限
+     * @return
+     */
+    public ReplayWeb3jService head(long start, long timestamp, long blockTime, double speed, long end) {
+        this.head = new Head(start, timestamp, blockTime, speed <= 0 ? 1 : speed, end, System.currentTimeMillis());
+        return this;
+    }
+
+    /**
+     * 模拟链头的 provider，需先调用 {@link #head}
+     *
+     * @return
+     */
+    public CurrentBlockProvider currentBlockProvider() {
+        return () -> {
+            Head h = head;
+            if (h == null) {
+                throw new IllegalStateException("head not set");
+            }
+            long number = h.number();
+            return new long[]{number, h.timestamp(number)};
+        };
+    }
+
+    @Override
+    protected InputStream performIO(String request) throws IOException {
+        count.incrementAndGet();
+        if (delegate != null) {
+            byte[] response;
+            try (InputStream is = delegate.performIO(request)) {
+                response = is == null ? new byte[0] : is.readAllBytes();
+            }
+            synchronized (out) {
+                write(out, request.getBytes(StandardCharsets.UTF_8));
+                write(out, response);
+            }
+            return new ByteArrayInputStream(response);
+        }
+        pause();
+        Head h = head;
+        if (h != null) {
+            byte[] fake = h.fake(request);
+            if (fake != null) {
+                return new ByteArrayInputStream(fake);
+            }
+        }
+        String key = key(request);
+        byte[][] responses = recordings.get(key);
+        if (responses == null) {
+            misses.incrementAndGet();
+            throw new IOException("request not recorded : " + (request.length() > 256 ? request.substring(0, 256) + "..." : request));
+        }
+        int i = cursors.computeIfAbsent(key, k -> new AtomicInteger()).getAndIncrement();
+        return new ByteArrayInputStream(responses[Math.min(i, responses.length - 1)]);
+    }
+
+    /**
+     * 从头开始回放
+     */
+    public void rewind() {
+        cursors.clear();
+        Head h = head;
+        if (h != null) {
+            head(h.start, h.timestamp, h.blockTime, h.speed, h.end);
+        }
+    }
+
+    /**
+     * 模拟网络延迟
+     *
+     * @throws IOException
+     */
+    private void pause() throws IOException {
+        long l = latency;
+        long j = jitter;
+        long d = l + (j > 0 ? ThreadLocalRandom.current().nextLong(j + 1) : 0);
+        if (d > 0) {
+            try {
+                Thread.sleep(d);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            }
+        }
+    }
+
+    /**
+     * 去掉 id 作为匹配的key
+     *
+     * @param request
+     * @return
+     */
+    private static String key(String request) {
+        return ID.matcher(request).replaceAll("");
+    }
+
+    private static void write(DataOutputStream out, byte[] bytes) throws IOException {
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static byte[] read(DataInputStream in) throws IOException {
+        int len = in.readInt();
+        byte[] bytes = new byte[len];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (out != null) {
+            synchronized (out) {
+                out.close();
+            }
+        }
+    }
+
+    /**
+     * 模拟链头
+     */
+    private static final class Head {
+        private final long start;
+        private final long timestamp;
+        private final long blockTime;
+        private final double speed;
+        private final long end;
+        private final long begin;
+
+        Head(long start, long timestamp, long blockTime, double speed, long end, long begin) {
+            this.start = start;
+            this.timestamp = timestamp;
+            this.blockTime = blockTime;
+            this.speed = speed;
+            this.end = end;
+            this.begin = begin;
+        }
+
+        long number() {
+            long n = start + (long) ((System.currentTimeMillis() - begin) * speed / Math.max(blockTime, 1));
+            return end > 0 ? Math.min(n, end) : n;
+        }
+
+        long timestamp(long number) {
+            return timestamp + (number - start) * blockTime / 1000;
+        }
+
+        /**
+         * eth_blockNumber 以及 latest 块直接由模拟链头应答
+         *
+         * @param request
+         * @return
+         */
+        byte[] fake(String request) {
+            if (request.startsWith("[")) {
+                return null;
+            }
+            long number = number();
+            String result;
+            if (request.contains("\"eth_blockNumber\"")) {
+                result = "\"0x" + Long.toHexString(number) + "\"";
+            } else if (request.contains("\"eth_getBlockByNumber\"") && request.contains("\"latest\"")) {
+                result = "{\"number\":\"0x" + Long.toHexString(number)
+                        + "\",\"timestamp\":\"0x" + Long.toHexString(timestamp(number))
+                        + "\",\"hash\":\"0x" + String.format("%064x", number) + "\"}";
+            } else {
+                return null;
+            }
+            return ("{\"jsonrpc\":\"2.0\",\"id\":0,\"result\":" + result + "}").getBytes(StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package org.beykery.eu.util;
+
+import org.web3j.protocol.exceptions.ClientConnectionException;
+
+/**
+ * 节点正常响应但rpc返回了error，换节点重试通常没有意义
+ */
+public class RpcErrorException extends ClientConnectionException {
+
+    public RpcErrorException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,47 @@
+package org.beykery.eu.util;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.List;
+
+/**
+ * 批量签名的结果
+ */
+@Getter
+@AllArgsConstructor
+public class SignedBatch {
+
+    /**
+     * 签名后的交易（hex），与输入顺序一致
+     */
+    private final List<String> transactions;
+
+    /**
+     * 耗时(ns)
+     */
+    private final long elapsedNanos;
+
+    /**
+     * 并行度
+     */
+    private final int parallel;
+
+    public int size() {
+        return transactions.size();
+    }
+
+    /**
+     * 每秒签名数
+     *
+     * @return
+     */
+    public double throughput() {
+        return elapsedNanos <= 0 ? 0 : transactions.size() * 1e9 / elapsedNanos;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("signed %d txs in %.1f ms (%.0f tx/s, parallel %d)", size(), elapsedNanos / 1e6, throughput(), parallel);
+    }
+}
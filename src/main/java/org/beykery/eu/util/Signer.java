@@ -0,0 +1,228 @@
+package org.beykery.eu.util;
+
+import lombok.Getter;
+import org.web3j.crypto.*;
+import org.web3j.utils.Numeric;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+
+/**
+ * 签名者，私钥只解析一次，公钥和地址只推导一次，可以多线程共享
+ * <p>
+ * 高频签名时由调用者持有 Signer；{@link #of(String)} 默认不缓存，需要时通过 {@link #setCacheSize(int)} 开启，
+ * 缓存以私钥的 sha256 为key，不保存私钥原文
+ */
+public class Signer {
+
+    /**
+     * 最多缓存的签名者数，0为不缓存
+     */
+    private static volatile int cacheSize;
+
+    /**
+     * sha256(私钥) -> 签名者
+     */
+    private static final Map<String, Signer> CACHE = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Signer> eldest) {
+            return size() > cacheSize;
+        }
+    };
+
+    @Getter
+    private final Credentials credentials;
+
+    /**
+     * checksum 地址
+     */
+    @Getter
+    private final String address;
+
+    public Signer(ECKeyPair keyPair) {
+        this.credentials = Credentials.create(keyPair);
+        this.address = Keys.toChecksumAddress(credentials.getAddress());
+    }
+
+    public Signer(String privateKey) {
+        this(ECKeyPair.create(Numeric.toBigInt(privateKey)));
+    }
+
+    /**
+     * 签名者，开启缓存时复用
+     *
+     * @param privateKey
+     * @return
+     */
+    public static Signer of(String privateKey) {
+        if (cacheSize <= 0) {
+            return new Signer(privateKey);
+        }
+        String key = Numeric.toHexStringNoPrefix(Hash.sha256(Numeric.hexStringToByteArray(privateKey)));
+        synchronized (CACHE) {
+            Signer signer = CACHE.get(key);
+            if (signer != null) {
+                return signer;
+            }
+        }
+        Signer signer = new Signer(privateKey);
+        synchronized (CACHE) {
+            Signer old = CACHE.putIfAbsent(key, signer);
+            return old != null ? old : signer;
+        }
+    }
+
+    /**
+     * 开启 {@link #of(String)} 的缓存
+     *
+     * @param size 最多缓存的签名者数，小于等于0时关闭并清空
+     */
+    public static void setCacheSize(int size) {
+        synchronized (CACHE) {
+            cacheSize = Math.max(size, 0);
+            if (cacheSize == 0) {
+                CACHE.clear();
+            } else {
+                while (CACHE.size() > cacheSize) {
+                    CACHE.remove(CACHE.keySet().iterator().next());
+                }
+            }
+        }
+    }
+
+    /**
+     * 缓存的签名者数
+     *
+     * @return
+     */
+    public static int cached() {
+        synchronized (CACHE) {
+            return CACHE.size();
+        }
+    }
+
+    /**
+     * 清空缓存
+     */
+    public static void clear() {
+        synchronized (CACHE) {
+            CACHE.clear();
+        }
+    }
+
+    public ECKeyPair getKeyPair() {
+        return credentials.getEcKeyPair();
+    }
+
+    /**
+     * 签名交易（legacy 或 eip1559）
+     *
+     * @param tx
+     * @param chainId 小于等于0时legacy交易不带chain id；eip1559交易使用自身的chain id
+     * @return
+     */
+    public byte[] signBytes(RawTransaction tx, long chainId) {
+        return chainId > 0 ? TransactionEncoder.signMessage(tx, chainId, credentials) : TransactionEncoder.signMessage(tx, credentials);
+    }
+
+    /**
+     * 签名交易
+     *
+     * @param tx
+     * @param chainId
+     * @return hex
+     */
+    public String sign(RawTransaction tx, long chainId) {
+        return Numeric.toHexString(signBytes(tx, chainId));
+    }
+
+    /**
+     * 签名交易，eip1559交易或不需要chain id时使用
+     *
+     * @param tx
+     * @return hex
+     */
+    public String sign(RawTransaction tx) {
+        return sign(tx, 0);
+    }
+
+    /**
+     * 并行批量签名，结果与输入顺序一致
+     *
+     * @param txs
+     * @param chainId
+     * @param executor 为null时使用按cpu数共享的执行器
+     * @return
+     */
+    public SignedBatch signAll(List<RawTransaction> txs, long chainId, BatchExecutor executor) {
+        return signRange(txs.size(), txs::get, chainId, executor);
+    }
+
+    public SignedBatch signAll(List<RawTransaction> txs, long chainId) {
+        return signAll(txs, chainId, null);
+    }
+
+    /**
+     * 按模板并行签名连续nonce的交易
+     *
+     * @param template  nonce -> 待签名交易
+     * @param fromNonce 起始nonce
+     * @param count     数量
+     * @param chainId
+     * @param executor  为null时使用按cpu数共享的执行器
+     * @return
+     */
+    public SignedBatch signRange(Function<BigInteger, RawTransaction> template, BigInteger fromNonce, int count, long chainId, BatchExecutor executor) {
+        return signRange(count, i -> template.apply(fromNonce.add(BigInteger.valueOf(i))), chainId, executor);
+    }
+
+    public SignedBatch signRange(Function<BigInteger, RawTransaction> template, BigInteger fromNonce, int count, long chainId) {
+        return signRange(template, fromNonce, count, chainId, null);
+    }
+
+    /**
+     * 按cpu数分段，每段在一个任务里顺序签名
+     */
+    private SignedBatch signRange(int n, IntFunction<RawTransaction> tx, long chainId, BatchExecutor executor) {
+        long start = System.nanoTime();
+        int cpus = Runtime.getRuntime().availableProcessors();
+        if (executor == null) {
+            executor = BatchExecutor.shared(cpus);
+        }
+        int chunks = Math.max(1, Math.min(n, cpus));
+        int size = (n + chunks - 1) / chunks;
+        String[] ret = new String[n];
+        List<Boolean> done = executor.invokeAll(chunks, c -> {
+            for (int i = c * size, end = Math.min(n, i + size); i < end; i++) {
+                ret[i] = sign(tx.apply(i), chainId);
+            }
+            return Boolean.TRUE;
+        });
+        for (int c = 0; c < done.size(); c++) {
+            if (done.get(c) == null) {
+                throw new IllegalStateException("sign failed at chunk " + c);
+            }
+        }
+        return new SignedBatch(Arrays.asList(ret), System.nanoTime() - start, chunks);
+    }
+
+    /**
+     * 带 \x19Ethereum Signed Message\n 前缀的签名
+     *
+     * @param msg
+     * @return r + s + v
+     */
+    public String signPrefixedMessage(String msg) {
+        Sign.SignatureData signatureData = Sign.signPrefixedMessage(msg.getBytes(), credentials.getEcKeyPair());
+        byte[] signedMessageBytes = new byte[32 + 32 + 1];
+        System.arraycopy(signatureData.getR(), 0, signedMessageBytes, 0, 32);
+        System.arraycopy(signatureData.getS(), 0, signedMessageBytes, 32, 32);
+        System.arraycopy(signatureData.getV(), 0, signedMessageBytes, 64, 1);
+        return Numeric.toHexString(signedMessageBytes);
+    }
+}
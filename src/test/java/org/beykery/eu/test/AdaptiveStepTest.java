@@ -0,0 +1,124 @@
+package org.beykery.eu.test;
+
+import org.beykery.eu.event.AdaptiveStepController;
+import org.beykery.eu.event.LogEventScanner;
+import org.beykery.eu.event.StepController;
+import org.beykery.eu.util.EthContractUtil;
+import org.junit.jupiter.api.Test;
+import org.web3j.abi.datatypes.Event;
+import org.web3j.protocol.Service;
+import org.web3j.protocol.exceptions.ClientConnectionException;
+import org.web3j.protocol.geth.Geth;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class AdaptiveStepTest {
+
+    @Test
+    void rateLimitKeepsStep() {
+        AdaptiveStepController c = new AdaptiveStepController(2000, 10000, 0, 0);
+        Throwable[] limited = {
+                new ClientConnectionException("http://node Invalid response received: 429; Too Many Requests"),
+                new IOException("rate limit exceeded"),
+                new IOException("project ID request rate exceeded"),
+                new IOException("Your app has exceeded its compute units per second capacity"),
+        };
+        for (Throwable ex : limited) {
+            assert AdaptiveStepController.isRateLimit(ex);
+            assert !AdaptiveStepController.isRangeError(ex);
+            assert c.onError(1000, ex) == 1000;
+        }
+        // 上限没有被限流错误改变
+        long step = 1000;
+        for (int i = 0; i < 100; i++) {
+            step = c.onSuccess(step, 0, 0, 0);
+        }
+        assert step == 2000;
+    }
+
+    @Test
+    void rangeErrorSetsCeiling() {
+        AdaptiveStepController c = new AdaptiveStepController(2000, 10000, 0, 0);
+        Throwable ex = new IOException("query returned more than 10000 results");
+        assert AdaptiveStepController.isRangeError(ex);
+        assert c.onError(1000, ex) == 500;
+        long step = 500;
+        for (int i = 0; i < 10; i++) {
+            step = c.onSuccess(step, 0, 0, 0);
+        }
+        assert step == 500;
+
+        // 普通错误只减半
+        assert !AdaptiveStepController.isRangeError(new IOException("connection reset"));
+        assert c.onError(400, new IOException("connection reset")) == 200;
+    }
+
+    /**
+     * 重试后成功的窗口只算成功
+     */
+    @Test
+    void recoveredWindowIsSuccess() throws Exception {
+        AtomicInteger failed = new AtomicInteger();
+        // 链头 0x10，块时间很早所以窗口之间不等出块；0x5 开始的窗口第一次出错
+        Service node = new Service(false) {
+            @Override
+            protected InputStream performIO(String request) throws IOException {
+                String result;
+                if (request.contains("eth_getLogs")) {
+                    if (request.contains("\"fromBlock\":\"0x5\"") && failed.incrementAndGet() == 1) {
+                        throw new IOException("connection reset");
+                    }
+                    result = "[]";
+                } else {
+                    result = "{\"number\":\"0x10\",\"timestamp\":\"0x64\",\"hash\":\"0x01\",\"transactions\":[]}";
+                }
+                return new ByteArrayInputStream(("{\"jsonrpc\":\"2.0\",\"id\":1,\"result\":" + result + "}").getBytes());
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        AtomicInteger successes = new AtomicInteger();
+        AtomicInteger errors = new AtomicInteger();
+        Geth web3j = EthContractUtil.getWeb3j(node);
+        ScanListener listener = new ScanListener();
+        LogEventScanner scanner = new LogEventScanner(web3j, web3j, 60_000, -1, 0, 1, 1, 1, 10, false, listener);
+        scanner.setStepController(new StepController() {
+            @Override
+            public long initial() {
+                return 4;
+            }
+
+            @Override
+            public long onSuccess(long step, long logSize, long bytes, long latency) {
+                successes.incrementAndGet();
+                return step;
+            }
+
+            @Override
+            public long onError(long step, Throwable ex) {
+                errors.incrementAndGet();
+                return step;
+            }
+        });
+        scanner.start(1, List.of(new Event("Transfer", List.of())), List.of(), null, 0.25, 0);
+        long begin = System.currentTimeMillis();
+        try {
+            while (successes.get() < 4) {
+                assert System.currentTimeMillis() - begin < 5000;
+                Thread.sleep(5);
+            }
+        } finally {
+            scanner.stop();
+        }
+        assert listener.reached.get() == 0x10;
+        assert failed.get() >= 2;
+        assert errors.get() == 0;
+        assert successes.get() == 4;
+    }
+}
@@ -0,0 +1,114 @@
+package org.beykery.eu.test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.beykery.eu.util.BatchCall;
+import org.beykery.eu.util.CallResult;
+import org.beykery.eu.util.EthContractUtil;
+import org.junit.jupiter.api.Test;
+import org.web3j.abi.TypeEncoder;
+import org.web3j.abi.TypeReference;
+import org.web3j.abi.datatypes.Address;
+import org.web3j.abi.datatypes.Function;
+import org.web3j.abi.datatypes.generated.Uint256;
+import org.web3j.protocol.Service;
+import org.web3j.protocol.Web3j;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class BatchCallTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final String OK = "0x1111111111111111111111111111111111111111";
+    private static final String REVERT = "0x2222222222222222222222222222222222222222";
+    private static final String DOWN = "0x3333333333333333333333333333333333333333";
+
+    /**
+     * OK 返回 5，REVERT 返回 rpc error，单独请求 DOWN 时网络出错；每次取块高加一
+     */
+    private static class Node extends Service {
+        private final AtomicLong latest = new AtomicLong(0x10);
+        private final List<String> blocks = new CopyOnWriteArrayList<>();
+
+        Node() {
+            super(false);
+        }
+
+        @Override
+        protected InputStream performIO(String request) throws IOException {
+            JsonNode node = MAPPER.readTree(request);
+            if (!node.isArray()) {
+                if (request.contains(DOWN)) {
+                    throw new IOException("connection reset");
+                }
+                return new ByteArrayInputStream(answer(node).getBytes());
+            }
+            List<String> answers = new ArrayList<>();
+            node.forEach(r -> answers.add(answer(r)));
+            return new ByteArrayInputStream(("[" + String.join(",", answers) + "]").getBytes());
+        }
+
+        private String answer(JsonNode r) {
+            String head = "{\"jsonrpc\":\"2.0\",\"id\":" + r.get("id") + ",";
+            if (r.get("method").asText().equals("eth_blockNumber")) {
+                return head + "\"result\":\"0x" + Long.toHexString(latest.getAndIncrement()) + "\"}";
+            }
+            blocks.add(r.get("params").get(1).asText());
+            if (r.get("params").get(0).get("to").asText().equals(REVERT)) {
+                return head + "\"error\":{\"code\":3,\"message\":\"execution reverted\"}}";
+            }
+            return head + "\"result\":\"0x" + TypeEncoder.encode(new Uint256(5)) + "\"}";
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    private static Function balanceOf() {
+        return new Function("balanceOf", List.of(new Address(OK)), List.of(new TypeReference<Uint256>() {
+        }));
+    }
+
+    @Test
+    void errorsStayPerCall() throws Exception {
+        Node node = new Node();
+        Web3j web3j = EthContractUtil.getWeb3j(node);
+        BatchCall call = EthContractUtil.batchCall(web3j).maxBatchSize(2)
+                .add(OK, balanceOf())
+                .add(REVERT, balanceOf())
+                .add(DOWN, balanceOf());
+        List<CallResult> results = call.execute();
+        assert results.size() == 3;
+        assert results.get(0).isSuccess() && results.get(0).<BigInteger>value(0).intValue() == 5;
+        assert !results.get(1).isSuccess() && results.get(1).getError().equals("execution reverted");
+        assert results.get(1).value(0) == null;
+        assert !results.get(2).isSuccess() && results.get(2).getError().contains("connection reset");
+        assert call.getExecutedBlock() == 0x10;
+        assert node.blocks.equals(List.of("0x10", "0x10"));
+    }
+
+    @Test
+    void latestPerExecute() throws Exception {
+        Node node = new Node();
+        Web3j web3j = EthContractUtil.getWeb3j(node);
+        BatchCall call = EthContractUtil.batchCall(web3j).add(OK, balanceOf());
+        call.execute();
+        call.execute();
+        // 未指定块高时每次执行都取当前块高
+        assert call.getBlock() == -1;
+        assert call.getExecutedBlock() == 0x11;
+        assert node.blocks.equals(List.of("0x10", "0x11"));
+
+        call.block(0x20).execute();
+        assert call.getExecutedBlock() == 0x20;
+        assert node.latest.get() == 0x12;
+    }
+}
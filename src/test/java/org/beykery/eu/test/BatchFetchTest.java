@@ -0,0 +1,97 @@
+package org.beykery.eu.test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.beykery.eu.util.EthContractUtil;
+import org.beykery.eu.util.ReceiptSource;
+import org.junit.jupiter.api.Test;
+import org.web3j.abi.datatypes.Event;
+import org.web3j.protocol.Service;
+import org.web3j.protocol.Web3j;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class BatchFetchTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    /**
+     * 每个块两笔交易，miss 中的 receipt 第一次返回 null
+     */
+    private static class Node extends Service {
+        private final Map<String, AtomicInteger> receipts = new ConcurrentHashMap<>();
+        private final List<Integer> receiptBatches = new CopyOnWriteArrayList<>();
+        private final List<String> miss;
+
+        Node(List<String> miss) {
+            super(false);
+            this.miss = miss;
+        }
+
+        @Override
+        protected InputStream performIO(String request) throws IOException {
+            JsonNode node = MAPPER.readTree(request);
+            if (!node.isArray()) {
+                return new ByteArrayInputStream(answer(node).getBytes());
+            }
+            List<String> answers = new ArrayList<>();
+            int n = 0;
+            for (JsonNode r : node) {
+                answers.add(answer(r));
+                n += r.get("method").asText().equals("eth_getTransactionReceipt") ? 1 : 0;
+            }
+            if (n > 0) {
+                receiptBatches.add(n);
+            }
+            return new ByteArrayInputStream(("[" + String.join(",", answers) + "]").getBytes());
+        }
+
+        private String answer(JsonNode r) {
+            String result;
+            String param = r.get("params").get(0).asText();
+            if (r.get("method").asText().equals("eth_getBlockByNumber")) {
+                result = "{\"number\":\"" + param + "\",\"hash\":\"0x01\",\"timestamp\":\"0x64\",\"transactions\":[\""
+                        + tx(param, 0) + "\",\"" + tx(param, 1) + "\"]}";
+            } else {
+                int times = receipts.computeIfAbsent(param, k -> new AtomicInteger()).incrementAndGet();
+                result = times == 1 && miss.contains(param) ? "null"
+                        : "{\"transactionHash\":\"" + param + "\",\"blockNumber\":\"0x1\",\"status\":\"0x1\",\"logs\":[]}";
+            }
+            return "{\"jsonrpc\":\"2.0\",\"id\":" + r.get("id") + ",\"result\":" + result + "}";
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    private static String tx(String block, int i) {
+        return block + "000" + i;
+    }
+
+    @Test
+    void retryOnlyMissing() throws Exception {
+        String missing = tx("0x3", 1);
+        Node node = new Node(List.of(missing));
+        Web3j web3j = EthContractUtil.getWeb3j(node);
+        ReceiptSource.set(web3j, ReceiptSource.TRANSACTION_RECEIPT);
+
+        long begin = System.currentTimeMillis();
+        EthContractUtil.getLogEvents(web3j, 1, 4, List.of(new Event("Transfer", List.of())), List.of(), true);
+        // 第二轮前有退避
+        assert System.currentTimeMillis() - begin >= 100;
+        assert node.receiptBatches.equals(List.of(8));
+        assert node.receipts.size() == 8;
+        node.receipts.forEach((hash, times) -> {
+            assert times.get() == (hash.equals(missing) ? 2 : 1);
+        });
+    }
+}
@@ -0,0 +1,39 @@
+package org.beykery.eu.test;
+
+import org.beykery.eu.util.EthContractUtil;
+import org.beykery.eu.util.SignedBatch;
+import org.beykery.eu.util.Signer;
+import org.junit.jupiter.api.Test;
+import org.web3j.crypto.RawTransaction;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+
+public class BatchSignTest {
+
+    private static final String PK = "0x4c0883a69102937d6231471b5dbb6204fe5129617082792ae468d01a3f362318";
+    private static final String TO = "0x8aCc161acB2626505755bBF36184841B8c099806";
+
+    private static RawTransaction tx(BigInteger nonce) {
+        return EthContractUtil.rawTransaction(nonce, BigInteger.valueOf(5_000_000_000L), BigInteger.valueOf(21000), TO, BigInteger.ONE, "0x");
+    }
+
+    @Test
+    void parallelMatchesSequential() {
+        List<RawTransaction> txs = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            txs.add(tx(BigInteger.valueOf(i)));
+        }
+        SignedBatch batch = EthContractUtil.signTransactions(PK, txs, 56);
+        assert batch.size() == 200;
+        assert batch.throughput() > 0;
+        for (int i = 0; i < txs.size(); i++) {
+            assert batch.getTransactions().get(i).equals(EthContractUtil.signTransaction(PK, txs.get(i), 56));
+        }
+
+        SignedBatch range = Signer.of(PK).signRange(BatchSignTest::tx, BigInteger.ZERO, 200, 56);
+        assert range.getTransactions().equals(batch.getTransactions());
+        assert Signer.of(PK).signAll(List.of(), 56).size() == 0;
+    }
+}
@@ -0,0 +1,114 @@
+package org.beykery.eu.test;
+
+import org.beykery.eu.util.CachingWeb3jService;
+import org.beykery.eu.util.EthContractUtil;
+import org.junit.jupiter.api.Test;
+import org.web3j.abi.TypeEncoder;
+import org.web3j.abi.datatypes.generated.Uint256;
+import org.web3j.protocol.Service;
+import org.web3j.protocol.Web3j;
+import org.web3j.protocol.core.DefaultBlockParameterName;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class CachingTest {
+
+    private static final String TOKEN = "0x4444444444444444444444444444444444444444";
+    private static final String USER = "0x1111111111111111111111111111111111111111";
+
+    private static final int CALLERS = 8;
+
+    @Test
+    void cacheAndCoalesce() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        CachingWeb3jService[] holder = new CachingWeb3jService[1];
+        Service node = new Service(false) {
+            @Override
+            protected InputStream performIO(String request) {
+                calls.incrementAndGet();
+                if (request.contains("eth_chainId")) {
+                    // 等其它调用者都挂到这个请求上再返回
+                    long deadline = System.currentTimeMillis() + 5000;
+                    while (holder[0].getCoalesced().get() < CALLERS - 1 && System.currentTimeMillis() < deadline) {
+                        Thread.onSpinWait();
+                    }
+                }
+                String result = request.contains("eth_chainId") ? "\"0x38\"" : "\"0x" + TypeEncoder.encode(new Uint256(18)) + "\"";
+                return new ByteArrayInputStream(("{\"jsonrpc\":\"2.0\",\"id\":1,\"result\":" + result + "}").getBytes());
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        CachingWeb3jService cache = new CachingWeb3jService(node, 100, 60_000);
+        holder[0] = cache;
+        Web3j web3j = EthContractUtil.getWeb3j(cache);
+
+        ExecutorService pool = Executors.newFixedThreadPool(CALLERS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Long>> futures = new ArrayList<>();
+        for (int i = 0; i < CALLERS; i++) {
+            futures.add(pool.submit(() -> {
+                start.await();
+                return EthContractUtil.chainId(web3j);
+            }));
+        }
+        start.countDown();
+        for (Future<Long> f : futures) {
+            assert f.get() == 56;
+        }
+        pool.shutdown();
+        assert cache.getCoalesced().get() == CALLERS - 1;
+        assert calls.get() == 1;
+        assert EthContractUtil.chainId(web3j) == 56;
+        assert calls.get() == 1;
+
+        // latest 的 decimals 默认不缓存
+        assert EthContractUtil.decimals(web3j, TOKEN).intValue() == 18;
+        assert calls.get() == 2;
+        cache.setCacheLatest(true);
+        assert EthContractUtil.decimals(web3j, TOKEN).intValue() == 18;
+        assert EthContractUtil.decimals(web3j, TOKEN).intValue() == 18;
+        assert calls.get() == 3;
+
+        // balanceOf at latest is not cached
+        EthContractUtil.balanceOf(web3j, USER, TOKEN);
+        EthContractUtil.balanceOf(web3j, USER, TOKEN);
+        assert calls.get() == 5;
+    }
+
+    /**
+     * 合约还没部署时的空代码不缓存
+     */
+    @Test
+    void emptyCodeNotCached() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        Service node = new Service(false) {
+            @Override
+            protected InputStream performIO(String request) {
+                String code = calls.incrementAndGet() == 1 ? "0x" : "0x6080";
+                return new ByteArrayInputStream(("{\"jsonrpc\":\"2.0\",\"id\":1,\"result\":\"" + code + "\"}").getBytes());
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        CachingWeb3jService cache = new CachingWeb3jService(node, 100, 60_000);
+        cache.setCacheLatest(true);
+        Web3j web3j = EthContractUtil.getWeb3j(cache);
+        assert web3j.ethGetCode(TOKEN, DefaultBlockParameterName.LATEST).send().getCode().equals("0x");
+        assert web3j.ethGetCode(TOKEN, DefaultBlockParameterName.LATEST).send().getCode().equals("0x6080");
+        assert web3j.ethGetCode(TOKEN, DefaultBlockParameterName.LATEST).send().getCode().equals("0x6080");
+        assert calls.get() == 2;
+    }
+}
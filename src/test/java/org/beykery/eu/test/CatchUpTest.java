@@ -0,0 +1,100 @@
+package org.beykery.eu.test;
+
+import org.beykery.eu.event.LogEventScanner;
+import org.beykery.eu.util.EthContractUtil;
+import org.junit.jupiter.api.Test;
+import org.web3j.abi.datatypes.Event;
+import org.web3j.protocol.Service;
+import org.web3j.protocol.geth.Geth;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+public class CatchUpTest {
+
+    private static final Pattern FROM = Pattern.compile("\"fromBlock\":\"(0x[0-9a-f]+)\"");
+    private static final long HEAD = 0x400;
+
+    /**
+     * 链头固定在 HEAD，eth_getLogs 随机延迟后返回空，fail 开始的窗口第一次出错
+     */
+    private static class Node extends Service {
+        private final Map<Long, AtomicInteger> fetched = new ConcurrentHashMap<>();
+        private final long fail;
+
+        Node(long fail) {
+            super(false);
+            this.fail = fail;
+        }
+
+        @Override
+        protected InputStream performIO(String request) throws IOException {
+            String result;
+            if (request.contains("eth_getLogs")) {
+                Matcher m = FROM.matcher(request);
+                m.find();
+                long from = Long.decode(m.group(1));
+                int times = fetched.computeIfAbsent(from, k -> new AtomicInteger()).incrementAndGet();
+                try {
+                    Thread.sleep(ThreadLocalRandom.current().nextInt(10));
+                } catch (InterruptedException ex) {
+                    throw new IOException(ex);
+                }
+                if (from == fail && times == 1) {
+                    throw new IOException("connection reset");
+                }
+                result = "[]";
+            } else {
+                result = "{\"number\":\"0x" + Long.toHexString(HEAD) + "\",\"timestamp\":\"0x"
+                        + Long.toHexString(System.currentTimeMillis() / 1000) + "\",\"hash\":\"0x01\",\"transactions\":[]}";
+            }
+            return new ByteArrayInputStream(("{\"jsonrpc\":\"2.0\",\"id\":1,\"result\":" + result + "}").getBytes());
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    /**
+     * 空窗口不重试等待，出错的窗口重扫而不是跳过，窗口按顺序连续通知
+     */
+    @Test
+    void orderedAndComplete() throws Exception {
+        Node node = new Node(0x33);
+        Geth web3j = EthContractUtil.getWeb3j(node);
+        ScanListener listener = new ScanListener();
+        // 空结果重试3次、每次等1秒，追块时不应发生
+        LogEventScanner scanner = new LogEventScanner(web3j, web3j, 60_000, -1, 0, 1, 1, 3, 1000, false, listener);
+        scanner.setCatchUpParallel(4);
+        scanner.setCatchUpDistance(16);
+        scanner.start(1, List.of(new Event("Transfer", List.of())), List.of(), null, 0.25, 10);
+        long begin = System.currentTimeMillis();
+        try {
+            // 追块在距链头 catchUpDistance 以内的最后一个窗口前结束
+            while (listener.reached.get() < HEAD - 16 - 10) {
+                assert System.currentTimeMillis() - begin < 5000;
+                Thread.sleep(5);
+            }
+        } finally {
+            scanner.stop();
+        }
+
+        List<long[]> windows = listener.windows;
+        assert windows.get(0)[0] == 1;
+        for (int i = 1; i < windows.size(); i++) {
+            assert windows.get(i)[0] == windows.get(i - 1)[1] + 1;
+        }
+        // 出错的窗口被重新请求，且只通知一次
+        assert node.fetched.get(0x33L).get() == 2;
+        assert windows.stream().filter(w -> w[0] == 0x33).count() == 1;
+    }
+}
@@ -0,0 +1,109 @@
+package org.beykery.eu.test;
+
+import org.beykery.eu.event.CheckpointStore;
+import org.beykery.eu.event.LogEventScanner;
+import org.beykery.eu.event.MappedCheckpointStore;
+import org.beykery.eu.util.EthContractUtil;
+import org.junit.jupiter.api.Test;
+import org.web3j.abi.datatypes.Event;
+import org.web3j.protocol.Service;
+import org.web3j.protocol.geth.Geth;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class CheckpointTest {
+
+    @Test
+    void resume() throws IOException {
+        Path file = Files.createTempFile("eu", ".ckpt");
+        try {
+            try (MappedCheckpointStore store = new MappedCheckpointStore(file, 100, 1000)) {
+                assert store.load() == -1;
+                for (long h = 1; h <= 10000; h++) {
+                    store.commit(h);
+                }
+            }
+            try (MappedCheckpointStore store = new MappedCheckpointStore(file)) {
+                assert store.load() == 10000;
+                store.commit(10001);
+            }
+            try (MappedCheckpointStore store = new MappedCheckpointStore(file)) {
+                assert store.load() == 10001;
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    /**
+     * 窗口的重试全部失败时不通知、不提交，之后重扫该窗口
+     */
+    @Test
+    void failedWindowNotCommitted() throws Exception {
+        AtomicInteger failed = new AtomicInteger();
+        // 链头 0x10，块时间很早所以窗口之间不等出块
+        Service node = new Service(false) {
+            @Override
+            protected InputStream performIO(String request) throws IOException {
+                String result;
+                if (request.contains("eth_getLogs")) {
+                    if (request.contains("\"fromBlock\":\"0x5\"") && failed.incrementAndGet() <= 3) {
+                        throw new IOException("connection reset");
+                    }
+                    result = "[]";
+                } else {
+                    result = "{\"number\":\"0x10\",\"timestamp\":\"0x64\",\"hash\":\"0x01\",\"transactions\":[]}";
+                }
+                return new ByteArrayInputStream(("{\"jsonrpc\":\"2.0\",\"id\":1,\"result\":" + result + "}").getBytes());
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        List<Long> commits = new CopyOnWriteArrayList<>();
+        Geth web3j = EthContractUtil.getWeb3j(node);
+        ScanListener listener = new ScanListener();
+        // 每个窗口最多尝试2次，0x5 开始的窗口第一次扫描整体失败
+        LogEventScanner scanner = new LogEventScanner(web3j, web3j, 60_000, -1, 0, 1, 1, 1, 10, false, listener);
+        scanner.setCheckpointStore(new CheckpointStore() {
+            @Override
+            public long load() {
+                return -1;
+            }
+
+            @Override
+            public void commit(long height) {
+                commits.add(height);
+            }
+
+            @Override
+            public void flush() {
+            }
+
+            @Override
+            public void close() {
+            }
+        });
+        scanner.start(1, List.of(new Event("Transfer", List.of())), List.of(), null, 0.25, 4);
+        long begin = System.currentTimeMillis();
+        try {
+            while (listener.reached.get() < 0x10) {
+                assert System.currentTimeMillis() - begin < 5000;
+                Thread.sleep(5);
+            }
+        } finally {
+            scanner.stop();
+        }
+        assert failed.get() == 4;
+        assert commits.equals(List.of(4L, 8L, 12L, 16L));
+        assert listener.windows.size() == 4 && listener.windows.get(1)[0] == 5 && listener.windows.get(1)[1] == 8;
+    }
+}
@@ -0,0 +1,150 @@
+package org.beykery.eu.test;
+
+import com.sun.net.httpserver.HttpServer;
+import org.beykery.eu.util.EndpointBalancer;
+import org.beykery.eu.util.EuHttpService;
+import org.junit.jupiter.api.Test;
+import org.web3j.protocol.Web3j;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class HedgeTest {
+
+    /**
+     * 本地节点，按 status 返回，返回前等待 delay 毫秒
+     */
+    private static HttpServer node(int status, long delay, long number, AtomicInteger hits) throws IOException {
+        return node(status, new AtomicLong(delay), number, hits);
+    }
+
+    private static HttpServer node(int status, AtomicLong delay, long number, AtomicInteger hits) throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", exchange -> {
+            hits.incrementAndGet();
+            exchange.getRequestBody().readAllBytes();
+            try {
+                Thread.sleep(delay.get());
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            byte[] body = ("{\"jsonrpc\":\"2.0\",\"id\":1,\"result\":\"0x" + Long.toHexString(number) + "\"}").getBytes();
+            try {
+                exchange.sendResponseHeaders(status, body.length);
+                try (OutputStream os = exchange.getResponseBody()) {
+                    os.write(body);
+                }
+            } catch (IOException ignored) {
+                // 被对冲取消
+            }
+        });
+        server.setExecutor(Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r);
+            t.setDaemon(true);
+            return t;
+        }));
+        server.start();
+        return server;
+    }
+
+    private static String url(HttpServer server) {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/";
+    }
+
+    private static EuHttpService hedged(HttpServer first, HttpServer second, long hedgeDelay) {
+        EuHttpService service = new EuHttpService(EndpointBalancer.roundRobin(List.of(url(first), url(second))));
+        service.setHedge(true, hedgeDelay);
+        return service;
+    }
+
+    @Test
+    void failFastThenFailover() throws Exception {
+        AtomicInteger firstHits = new AtomicInteger();
+        AtomicInteger secondHits = new AtomicInteger();
+        HttpServer first = node(503, 0, 1, firstHits);
+        HttpServer second = node(200, 0, 2, secondHits);
+        try {
+            Web3j web3j = Web3j.build(hedged(first, second, 3000));
+            EuHttpService.resetResponseBytes();
+            long begin = System.currentTimeMillis();
+            assert web3j.ethBlockNumber().send().getBlockNumber().longValue() == 2;
+            // 不等对冲延迟，失败后立即换节点
+            assert System.currentTimeMillis() - begin < 2000;
+            assert firstHits.get() == 1 && secondHits.get() == 1;
+            // 响应字节数记在调用线程上
+            assert EuHttpService.responseBytes() > 0;
+        } finally {
+            first.stop(0);
+            second.stop(0);
+        }
+    }
+
+    @Test
+    void slowThenHedgeWins() throws Exception {
+        AtomicInteger firstHits = new AtomicInteger();
+        AtomicInteger secondHits = new AtomicInteger();
+        AtomicLong slow = new AtomicLong();
+        HttpServer first = node(200, slow, 1, firstHits);
+        HttpServer second = node(200, 0, 2, secondHits);
+        try {
+            Web3j web3j = Web3j.build(hedged(first, second, 100));
+            // 有32个样本后才有p95
+            for (int i = 0; i < 32; i++) {
+                web3j.ethBlockNumber().send();
+            }
+            firstHits.set(0);
+            secondHits.set(0);
+            slow.set(2000);
+            long begin = System.currentTimeMillis();
+            assert web3j.ethBlockNumber().send().getBlockNumber().longValue() == 2;
+            assert System.currentTimeMillis() - begin < 1000;
+            assert firstHits.get() == 1 && secondHits.get() == 1;
+        } finally {
+            first.stop(0);
+            second.stop(0);
+        }
+    }
+
+    /**
+     * 延迟样本不足时不对冲
+     */
+    @Test
+    void coldNoHedge() throws Exception {
+        AtomicInteger firstHits = new AtomicInteger();
+        AtomicInteger secondHits = new AtomicInteger();
+        HttpServer first = node(200, 300, 1, firstHits);
+        HttpServer second = node(200, 0, 2, secondHits);
+        try {
+            Web3j web3j = Web3j.build(hedged(first, second, 50));
+            assert web3j.ethBlockNumber().send().getBlockNumber().longValue() == 1;
+            assert firstHits.get() == 1 && secondHits.get() == 0;
+        } finally {
+            first.stop(0);
+            second.stop(0);
+        }
+    }
+
+    @Test
+    void allFail() throws Exception {
+        AtomicInteger hits = new AtomicInteger();
+        HttpServer first = node(503, 0, 1, hits);
+        HttpServer second = node(503, 0, 2, hits);
+        try {
+            Web3j web3j = Web3j.build(hedged(first, second, 100));
+            try {
+                web3j.ethBlockNumber().send();
+                assert false;
+            } catch (Exception ex) {
+                assert hits.get() == 2;
+            }
+        } finally {
+            first.stop(0);
+            second.stop(0);
+        }
+    }
+}
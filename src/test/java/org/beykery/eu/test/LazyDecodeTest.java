@@ -0,0 +1,62 @@
+package org.beykery.eu.test;
+
+import org.beykery.eu.event.LazyLogEvent;
+import org.beykery.eu.event.LogEvent;
+import org.beykery.eu.util.EthContractUtil;
+import org.beykery.eu.util.EthLogStream;
+import org.beykery.eu.util.EventSet;
+import org.junit.jupiter.api.Test;
+import org.web3j.abi.EventEncoder;
+import org.web3j.abi.TypeReference;
+import org.web3j.abi.datatypes.Address;
+import org.web3j.abi.datatypes.Event;
+import org.web3j.abi.datatypes.generated.Uint256;
+import org.web3j.protocol.ObjectMapperFactory;
+import org.web3j.protocol.core.methods.response.EthLog;
+import org.web3j.protocol.core.methods.response.Log;
+
+import java.util.Arrays;
+import java.util.List;
+
+public class LazyDecodeTest {
+
+    public static final Event TRANSFER_EVENT = new Event(
+            "Transfer",
+            Arrays.asList(
+                    new TypeReference<Address>(true) {
+                    },
+                    new TypeReference<Address>(true) {
+                    },
+                    new TypeReference<Uint256>() {
+                    }
+            )
+    );
+
+    @Test
+    void lazyEqualsEager() throws Exception {
+        String json = "{\"jsonrpc\":\"2.0\",\"id\":1,\"result\":[{"
+                + "\"address\":\"0xDecCfF0273Ec47D913Dd88eAb45d1c00F1be26aF\","
+                + "\"topics\":[\"" + EventEncoder.encode(TRANSFER_EVENT) + "\","
+                + "\"0x000000000000000000000000deccff0273ec47d913dd88eab45d1c00f1be26af\","
+                + "\"0x0000000000000000000000008acc161acb2626505755bbf36184841b8c099806\"],"
+                + "\"data\":\"0x0000000000000000000000000000000000000000000000000000000000000010\","
+                + "\"blockNumber\":\"0x1cf5b2c\",\"transactionHash\":\"0xcd\",\"transactionIndex\":\"0x0\","
+                + "\"blockHash\":\"0x12\",\"logIndex\":\"0x1f\",\"removed\":false}]}";
+        EventSet set = EventSet.of(Arrays.asList(TRANSFER_EVENT), Arrays.asList("0xdeccff0273ec47d913dd88eab45d1c00f1be26af"));
+
+        EthLog std = ObjectMapperFactory.getObjectMapper().readValue(json, EthLog.class);
+        List<Log> logs = std.getLogs().stream().map(item -> ((EthLog.LogObject) item).get()).toList();
+        LogEvent eager = EthContractUtil.events(logs, set).get(0);
+
+        EthLogStream stream = ObjectMapperFactory.getObjectMapper().readValue(json, EthLogStream.class);
+        LazyLogEvent lazy = stream.getResult().get(0);
+        lazy.setEvent(set.match(lazy.getTopic(), lazy.getIndexedSize(), lazy.getContract()));
+
+        assert lazy.getEvent() == TRANSFER_EVENT;
+        assert lazy.getBlockNumber() == eager.getBlockNumber();
+        assert lazy.getLogIndex() == eager.getLogIndex();
+        assert lazy.getContract().equals(eager.getContract());
+        assert lazy.getIndexedValues().equals(eager.getIndexedValues());
+        assert lazy.getNonIndexedValues().equals(eager.getNonIndexedValues());
+    }
+}
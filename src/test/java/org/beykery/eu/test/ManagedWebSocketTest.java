@@ -0,0 +1,168 @@
+package org.beykery.eu.test;
+
+import org.beykery.eu.util.EthContractUtil;
+import org.beykery.eu.util.ManagedWebSocketService;
+import org.java_websocket.WebSocket;
+import org.java_websocket.handshake.ClientHandshake;
+import org.java_websocket.server.WebSocketServer;
+import org.junit.jupiter.api.Test;
+import org.web3j.protocol.geth.Geth;
+import org.web3j.protocol.websocket.events.PendingTransactionNotification;
+
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+public class ManagedWebSocketTest {
+
+    private static final Pattern ID = Pattern.compile("\"id\":(\\d+)");
+
+    /**
+     * 回复 eth_subscribe，并可以向所有连接推送 pending hash
+     */
+    private static class Node extends WebSocketServer {
+        private final AtomicInteger subscribes = new AtomicInteger();
+        private final List<WebSocket> subscribed = new CopyOnWriteArrayList<>();
+        private final CountDownLatch started = new CountDownLatch(1);
+        private final AtomicInteger closeOnOpen = new AtomicInteger();
+
+        Node(int port) {
+            super(new InetSocketAddress("127.0.0.1", port));
+            setReuseAddr(true);
+        }
+
+        @Override
+        public void onOpen(WebSocket conn, ClientHandshake handshake) {
+            if (closeOnOpen.getAndUpdate(n -> Math.max(n - 1, 0)) > 0) {
+                conn.close();
+            }
+        }
+
+        @Override
+        public void onClose(WebSocket conn, int code, String reason, boolean remote) {
+            subscribed.remove(conn);
+        }
+
+        @Override
+        public void onMessage(WebSocket conn, String message) {
+            Matcher m = ID.matcher(message);
+            m.find();
+            if (message.contains("eth_subscribe")) {
+                int n = subscribes.incrementAndGet();
+                conn.send("{\"jsonrpc\":\"2.0\",\"id\":" + m.group(1) + ",\"result\":\"0xsub" + n + "\"}");
+                subscribed.add(conn);
+            } else {
+                conn.send("{\"jsonrpc\":\"2.0\",\"id\":" + m.group(1) + ",\"result\":true}");
+            }
+        }
+
+        void push(String hash) {
+            for (WebSocket conn : subscribed) {
+                conn.send("{\"jsonrpc\":\"2.0\",\"method\":\"eth_subscription\",\"params\":{\"subscription\":\"0xsub" + subscribes.get() + "\",\"result\":\"" + hash + "\"}}");
+            }
+        }
+
+        void dropAll() {
+            getConnections().forEach(WebSocket::close);
+        }
+
+        @Override
+        public void onError(WebSocket conn, Exception ex) {
+        }
+
+        @Override
+        public void onStart() {
+            started.countDown();
+        }
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!condition.getAsBoolean()) {
+            assert System.currentTimeMillis() < deadline;
+            Thread.sleep(20);
+        }
+    }
+
+    @Test
+    void resubscribeAfterDrop() throws Exception {
+        int port;
+        try (ServerSocket s = new ServerSocket(0)) {
+            port = s.getLocalPort();
+        }
+        Node node = new Node(port);
+        node.start();
+        node.started.await(5, TimeUnit.SECONDS);
+
+        ManagedWebSocketService ws = new ManagedWebSocketService("ws://127.0.0.1:" + port);
+        ws.setInitialBackoff(50);
+        AtomicLong gap = new AtomicLong(-1);
+        ws.setReconnectListener((from, to) -> gap.set(to - from));
+        ws.connect();
+        Geth web3j = EthContractUtil.getWeb3j(ws);
+
+        List<String> hashes = new CopyOnWriteArrayList<>();
+        AtomicInteger errors = new AtomicInteger();
+        web3j.newPendingTransactionsNotifications()
+                .map(PendingTransactionNotification::getParams)
+                .subscribe(p -> hashes.add(p.getResult()), ex -> errors.incrementAndGet());
+
+        waitFor(() -> node.subscribed.size() == 1);
+        node.push("0x01");
+        waitFor(() -> hashes.size() == 1);
+
+        node.dropAll();
+        waitFor(() -> gap.get() >= 0 && node.subscribed.size() == 1);
+        assert ws.getReconnects().get() == 1;
+        assert node.subscribes.get() == 2;
+        node.push("0x02");
+        waitFor(() -> hashes.size() == 2);
+        assert hashes.equals(List.of("0x01", "0x02"));
+        assert errors.get() == 0;
+
+        ws.close();
+        node.stop();
+    }
+
+    /**
+     * 重连刚建立的连接马上又被断开，重连不能丢
+     */
+    @Test
+    void dropRightAfterReconnect() throws Exception {
+        int port;
+        try (ServerSocket s = new ServerSocket(0)) {
+            port = s.getLocalPort();
+        }
+        Node node = new Node(port);
+        node.start();
+        node.started.await(5, TimeUnit.SECONDS);
+
+        AtomicInteger reconnected = new AtomicInteger();
+        Geth web3j = EthContractUtil.getManagedWeb3j("ws://127.0.0.1:" + port, (from, to) -> reconnected.incrementAndGet());
+        List<String> hashes = new CopyOnWriteArrayList<>();
+        web3j.newPendingTransactionsNotifications()
+                .map(PendingTransactionNotification::getParams)
+                .subscribe(p -> hashes.add(p.getResult()));
+        waitFor(() -> node.subscribed.size() == 1);
+
+        for (int i = 0; i < 3; i++) {
+            node.closeOnOpen.set(1);
+            node.dropAll();
+            waitFor(() -> reconnected.get() > 0 && node.subscribed.size() == 1 && node.closeOnOpen.get() == 0);
+            reconnected.set(0);
+        }
+        node.push("0x01");
+        waitFor(() -> hashes.size() == 1);
+
+        web3j.shutdown();
+        node.stop();
+    }
+}
@@ -0,0 +1,63 @@
+package org.beykery.eu.test;
+
+import org.beykery.eu.util.EthContractUtil;
+import org.junit.jupiter.api.Test;
+import org.web3j.abi.FunctionEncoder;
+import org.web3j.abi.TypeEncoder;
+import org.web3j.abi.datatypes.*;
+import org.web3j.abi.datatypes.generated.Uint256;
+import org.web3j.protocol.Service;
+import org.web3j.protocol.Web3j;
+import org.web3j.utils.Numeric;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+
+public class MulticallTest {
+
+    private static final String TOKEN = "0x4444444444444444444444444444444444444444";
+
+    @Test
+    void aggregate3() throws Exception {
+        DynamicArray<DynamicStruct> results = new DynamicArray<>(DynamicStruct.class, List.of(
+                new DynamicStruct(new Bool(true), new DynamicBytes(Numeric.hexStringToByteArray(TypeEncoder.encode(new Uint256(12345))))),
+                new DynamicStruct(new Bool(false), new DynamicBytes(new byte[]{1, 2, 3})),
+                new DynamicStruct(new Bool(true), new DynamicBytes(Numeric.hexStringToByteArray(TypeEncoder.encode(new Uint256(7)))))
+        ));
+        String response = "{\"jsonrpc\":\"2.0\",\"id\":1,\"result\":\"0x" + FunctionEncoder.encodeConstructor(List.of(results)) + "\"}";
+        StringBuilder request = new StringBuilder();
+        Service service = new Service(false) {
+            @Override
+            protected InputStream performIO(String r) {
+                request.append(r);
+                return new ByteArrayInputStream(response.getBytes());
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        Web3j web3j = EthContractUtil.getWeb3j(service);
+        List<String> users = List.of(
+                "0x1111111111111111111111111111111111111111",
+                "0x2222222222222222222222222222222222222222",
+                "0x3333333333333333333333333333333333333333"
+        );
+        List<BigInteger> balances = EthContractUtil.balancesOf(web3j, users, TOKEN, 100);
+        assert balances.get(0).longValue() == 12345;
+        assert balances.get(1) == null;
+        assert balances.get(2).longValue() == 7;
+
+        List<DynamicStruct> calls = new ArrayList<>();
+        for (String user : users) {
+            String data = FunctionEncoder.encode(new Function("balanceOf", List.of(new Address(user)), List.of()));
+            calls.add(new DynamicStruct(new Address(TOKEN), new Bool(true), new DynamicBytes(Numeric.hexStringToByteArray(data))));
+        }
+        String expected = FunctionEncoder.encode(new Function("aggregate3", List.of(new DynamicArray<>(DynamicStruct.class, calls)), List.of()));
+        assert request.toString().contains(expected);
+        assert request.toString().contains("\"0x64\"");
+    }
+}
@@ -0,0 +1,171 @@
+package org.beykery.eu.test;
+
+import io.reactivex.Flowable;
+import io.reactivex.processors.PublishProcessor;
+import org.beykery.eu.event.LogEventScanner;
+import org.beykery.eu.event.NewHeadsBlockProvider;
+import org.beykery.eu.util.EthContractUtil;
+import org.junit.jupiter.api.Test;
+import org.web3j.abi.datatypes.Event;
+import org.web3j.protocol.ObjectMapperFactory;
+import org.web3j.protocol.Service;
+import org.web3j.protocol.Web3j;
+import org.web3j.protocol.core.Request;
+import org.web3j.protocol.geth.Geth;
+import org.web3j.protocol.websocket.events.NewHeadsNotification;
+import org.web3j.protocol.websocket.events.Notification;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class NewHeadsTest {
+
+    /**
+     * latest 块由 latest 决定，newHeads 由 heads 推送
+     */
+    private static class Node extends Service {
+        private final PublishProcessor<NewHeadsNotification> heads = PublishProcessor.create();
+        private final AtomicLong latest = new AtomicLong(0x10);
+        private final boolean ws;
+
+        Node(boolean ws) {
+            super(false);
+            this.ws = ws;
+        }
+
+        @Override
+        protected InputStream performIO(String request) {
+            if (request.contains("eth_getLogs")) {
+                return new ByteArrayInputStream("{\"jsonrpc\":\"2.0\",\"id\":1,\"result\":[]}".getBytes());
+            }
+            String block = "{\"number\":\"0x" + Long.toHexString(latest.get()) + "\",\"timestamp\":\"0x64\",\"hash\":\"0x01\",\"transactions\":[]}";
+            return new ByteArrayInputStream(("{\"jsonrpc\":\"2.0\",\"id\":1,\"result\":" + block + "}").getBytes());
+        }
+
+        @Override
+        public <T extends Notification<?>> Flowable<T> subscribe(Request request, String unsubscribeMethod, Class<T> responseType) {
+            if (!ws) {
+                return super.subscribe(request, unsubscribeMethod, responseType);
+            }
+            return (Flowable<T>) heads;
+        }
+
+        void push(long number) throws IOException {
+            String json = "{\"jsonrpc\":\"2.0\",\"method\":\"eth_subscription\",\"params\":{\"subscription\":\"0x1\",\"result\":"
+                    + "{\"number\":\"0x" + Long.toHexString(number) + "\",\"timestamp\":\"0x65\",\"hash\":\"0x02\"}}}";
+            heads.onNext(ObjectMapperFactory.getObjectMapper().readValue(json, NewHeadsNotification.class));
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    @Test
+    void pushThenFallback() throws Exception {
+        Node node = new Node(true);
+        NewHeadsBlockProvider provider = new NewHeadsBlockProvider(Web3j.build(node), 1000);
+        AtomicInteger woken = new AtomicInteger();
+        assert provider.bind(woken::incrementAndGet) != null;
+
+        assert provider.currentBlockNumberAndTimestamp()[0] == 0x10;
+        long polled = provider.getPolled().get();
+        node.push(0x11);
+        assert woken.get() == 2;
+        long[] head = provider.currentBlockNumberAndTimestamp();
+        assert head[0] == 0x11 && head[1] == 0x65;
+        assert provider.getPolled().get() == polled;
+        assert provider.isLive();
+
+        // 旧块不通知
+        node.push(0x11);
+        assert woken.get() == 2;
+
+        // 订阅断开后轮询
+        node.heads.onError(new IOException("closed"));
+        assert !provider.isLive();
+        node.latest.set(0x20);
+        assert provider.currentBlockNumberAndTimestamp()[0] == 0x20;
+        assert provider.getPolled().get() > polled;
+        provider.close();
+    }
+
+    @Test
+    void unbind() throws Exception {
+        Node node = new Node(true);
+        NewHeadsBlockProvider provider = new NewHeadsBlockProvider(Web3j.build(node), 1000);
+        AtomicInteger a = new AtomicInteger();
+        AtomicInteger b = new AtomicInteger();
+        Runnable unbindA = provider.bind(a::incrementAndGet);
+        provider.bind(b::incrementAndGet);
+        node.push(0x11);
+        assert a.get() == 1 && b.get() == 1;
+        unbindA.run();
+        node.push(0x12);
+        assert a.get() == 1 && b.get() == 2;
+        assert provider.bindings() == 1;
+        provider.close();
+    }
+
+    /**
+     * 两个 scanner 共享一个 provider，新块到来时都立即被唤醒
+     */
+    @Test
+    void sharedByScanners() throws Exception {
+        Node node = new Node(true);
+        Geth web3j = EthContractUtil.getWeb3j(node);
+        NewHeadsBlockProvider provider = new NewHeadsBlockProvider(web3j, 3000);
+        List<ScanListener> listeners = new ArrayList<>();
+        List<LogEventScanner> scanners = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            ScanListener listener = new ScanListener();
+            listeners.add(listener);
+            LogEventScanner scanner = new LogEventScanner(web3j, web3j, 3000, -1, 0, 1, 1, 1, 10, false, listener);
+            scanner.start(0x10, List.of(new Event("Transfer", List.of())), List.of(), provider, 0.25, 10);
+            scanners.add(scanner);
+        }
+        Thread.sleep(500);
+        assert provider.bindings() == 2;
+        node.latest.set(0x11);
+        long begin = System.currentTimeMillis();
+        node.push(0x11);
+        while (listeners.stream().anyMatch(l -> l.reached.get() < 0x11)) {
+            assert System.currentTimeMillis() - begin < 1500;
+            Thread.sleep(5);
+        }
+        scanners.forEach(LogEventScanner::stop);
+        assert provider.bindings() == 0;
+        provider.close();
+    }
+
+    /**
+     * 订阅成功但一直没有推送（连接已断），按pollInterval轮询而不是当作正常推送
+     */
+    @Test
+    void silentSubscriptionPolls() throws Exception {
+        Node node = new Node(true);
+        NewHeadsBlockProvider provider = new NewHeadsBlockProvider(Web3j.build(node), 1000);
+        assert !provider.isLive();
+        Thread.sleep(1200);
+        // pollInterval 250ms，staleAfter 3000ms
+        assert provider.getPolled().get() >= 3;
+        assert !provider.isLive();
+        node.latest.set(0x11);
+        assert provider.currentBlockNumberAndTimestamp()[0] == 0x11;
+        provider.close();
+    }
+
+    @Test
+    void httpOnlyPolls() throws Exception {
+        NewHeadsBlockProvider provider = new NewHeadsBlockProvider(Web3j.build(new Node(false)), 1000);
+        assert provider.bind(() -> {
+        }) == null;
+        assert provider.currentBlockNumberAndTimestamp()[0] == 0x10;
+        provider.close();
+    }
+}
@@ -0,0 +1,53 @@
+package org.beykery.eu.test;
+
+import org.beykery.eu.event.PendingHash;
+import org.beykery.eu.event.PendingHashQueue;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+public class PendingQueueTest {
+
+    @Test
+    void overflow() {
+        PendingHashQueue newest = new PendingHashQueue(4, PendingHashQueue.OverflowPolicy.DROP_NEWEST);
+        PendingHashQueue oldest = new PendingHashQueue(4, PendingHashQueue.OverflowPolicy.DROP_OLDEST);
+        for (int i = 0; i < 6; i++) {
+            PendingHash ph = new PendingHash("0x" + i, i, true);
+            newest.offer(ph);
+            oldest.offer(ph);
+        }
+        assert newest.dropped() == 2 && oldest.dropped() == 2;
+        assert newest.poll().getHash().equals("0x0");
+        assert oldest.poll().getHash().equals("0x2");
+        assert newest.drain(ph -> {
+        }) == 3;
+        assert newest.isEmpty();
+    }
+
+    @Test
+    void producers() throws InterruptedException {
+        PendingHashQueue queue = new PendingHashQueue(1 << 10, PendingHashQueue.OverflowPolicy.DROP_NEWEST);
+        Set<String> seen = new HashSet<>();
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            int id = t;
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 10000; i++) {
+                    while (!queue.offer(new PendingHash(id + "-" + i, 0, true))) {
+                        Thread.onSpinWait();
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        while (seen.size() < 40000) {
+            queue.drain(ph -> seen.add(ph.getHash()));
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        assert queue.isEmpty();
+    }
+}
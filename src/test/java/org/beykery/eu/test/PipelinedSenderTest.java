@@ -0,0 +1,216 @@
+package org.beykery.eu.test;
+
+import com.sun.net.httpserver.HttpServer;
+import org.beykery.eu.util.EthContractUtil;
+import org.beykery.eu.util.EuHttpService;
+import org.beykery.eu.util.NonceManager;
+import org.beykery.eu.util.PipelinedSender;
+import org.beykery.eu.util.RpcErrorException;
+import org.beykery.eu.util.Signer;
+import org.junit.jupiter.api.Test;
+import org.web3j.crypto.RawTransaction;
+import org.web3j.crypto.TransactionDecoder;
+import org.web3j.protocol.Service;
+import org.web3j.protocol.Web3j;
+import org.web3j.protocol.core.methods.response.EthSendTransaction;
+import org.web3j.protocol.exceptions.ClientConnectionException;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+public class PipelinedSenderTest {
+
+    private static final String PK = "0x4c0883a69102937d6231471b5dbb6204fe5129617082792ae468d01a3f362318";
+    private static final String TO = "0x1111111111111111111111111111111111111111";
+    private static final Pattern ID = Pattern.compile("\"id\":(\\d+)");
+    private static final Pattern RAW = Pattern.compile("eth_sendRawTransaction.*\"params\":\\[\"(0x[0-9a-fA-F]+)\"\\]");
+
+    @Test
+    void pipelineAndResync() throws Exception {
+        AtomicInteger nonceQueries = new AtomicInteger();
+        AtomicInteger sends = new AtomicInteger();
+        AtomicInteger batches = new AtomicInteger();
+        AtomicInteger failNext = new AtomicInteger();
+        Service node = new Service(false) {
+            @Override
+            protected InputStream performIO(String request) {
+                if (request.contains("eth_getTransactionCount")) {
+                    nonceQueries.incrementAndGet();
+                    return new ByteArrayInputStream("{\"jsonrpc\":\"2.0\",\"id\":1,\"result\":\"0x7\"}".getBytes());
+                }
+                if (request.startsWith("[")) {
+                    batches.incrementAndGet();
+                }
+                List<String> out = new ArrayList<>();
+                Matcher m = ID.matcher(request);
+                while (m.find()) {
+                    sends.incrementAndGet();
+                    if (failNext.getAndSet(0) > 0) {
+                        out.add("{\"jsonrpc\":\"2.0\",\"id\":" + m.group(1) + ",\"error\":{\"code\":-32000,\"message\":\"nonce too low\"}}");
+                    } else {
+                        out.add("{\"jsonrpc\":\"2.0\",\"id\":" + m.group(1) + ",\"result\":\"0x01\"}");
+                    }
+                }
+                String body = request.startsWith("[") ? "[" + String.join(",", out) + "]" : out.get(0);
+                return new ByteArrayInputStream(body.getBytes());
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        Web3j web3j = Web3j.build(node);
+        NonceManager nonces = new NonceManager(web3j);
+        Signer signer = Signer.of(PK);
+        PipelinedSender sender = new PipelinedSender(web3j, nonces, 50, 50);
+
+        List<CompletableFuture<EthSendTransaction>> futures = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            futures.add(sender.send(signer, n -> RawTransaction.createEtherTransaction(n, BigInteger.ONE, BigInteger.valueOf(21000), TO, BigInteger.ONE), 56));
+        }
+        for (CompletableFuture<EthSendTransaction> f : futures) {
+            assert !f.get().hasError();
+        }
+        assert nonceQueries.get() == 1;
+        assert sends.get() == 20;
+        assert batches.get() < sends.get();
+        assert nonces.peek(signer.getAddress()) == 27;
+
+        failNext.set(1);
+        EthSendTransaction r = sender.send(signer, n -> RawTransaction.createEtherTransaction(n, BigInteger.ONE, BigInteger.valueOf(21000), TO, BigInteger.ONE), 56).get();
+        assert r.hasError();
+        assert nonces.peek(signer.getAddress()) == -1;
+        assert nonces.next(signer.getAddress()).longValue() == 7;
+        assert nonceQueries.get() == 2;
+        sender.close();
+    }
+
+    private static HttpServer node(int status, String error) throws IOException {
+        return node(status, error, new CopyOnWriteArrayList<>());
+    }
+
+    /**
+     * 本地 http 节点：nonce 为 7，发送交易时按 status 返回，200 时返回 rpc error；收到的请求记在 requests
+     */
+    private static HttpServer node(int status, String error, List<String> requests) throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", exchange -> {
+            String request = new String(exchange.getRequestBody().readAllBytes());
+            requests.add(request);
+            Matcher m = ID.matcher(request);
+            m.find();
+            int code = 200;
+            String body;
+            if (request.contains("eth_getTransactionCount")) {
+                body = "{\"jsonrpc\":\"2.0\",\"id\":" + m.group(1) + ",\"result\":\"0x7\"}";
+            } else {
+                code = status;
+                body = "{\"jsonrpc\":\"2.0\",\"id\":" + m.group(1) + ",\"error\":{\"code\":-32000,\"message\":\"" + error + "\"}}";
+            }
+            byte[] bytes = body.getBytes();
+            exchange.sendResponseHeaders(code, bytes.length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(bytes);
+            }
+        });
+        server.start();
+        return server;
+    }
+
+    @Test
+    void resyncThroughEuHttpService() throws Exception {
+        HttpServer server = node(200, "nonce too low");
+        try {
+            Web3j web3j = Web3j.build(new EuHttpService("http://127.0.0.1:" + server.getAddress().getPort() + "/"));
+            NonceManager nonces = new NonceManager(web3j);
+            String address = Signer.of(PK).getAddress();
+            try {
+                EthContractUtil.signAndSendTransaction(web3j, nonces, PK, BigInteger.ONE, BigInteger.valueOf(21000), TO, BigInteger.ONE, "0x", 56);
+                assert false;
+            } catch (RpcErrorException ex) {
+                assert ex.getMessage().contains("nonce too low");
+            }
+            assert nonces.peek(address) == -1;
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    /**
+     * 交易因为余额不足被拒绝，nonce归还给下一笔
+     */
+    @Test
+    void reuseRejectedNonce() throws Exception {
+        List<String> requests = new CopyOnWriteArrayList<>();
+        HttpServer server = node(200, "insufficient funds for gas * price + value", requests);
+        try {
+            Web3j web3j = Web3j.build(new EuHttpService("http://127.0.0.1:" + server.getAddress().getPort() + "/"));
+            NonceManager nonces = new NonceManager(web3j);
+            String address = Signer.of(PK).getAddress();
+            for (int i = 0; i < 2; i++) {
+                try {
+                    EthContractUtil.signAndSendTransaction(web3j, nonces, PK, BigInteger.ONE, BigInteger.valueOf(21000), TO, BigInteger.ONE, "0x", 56);
+                    assert false;
+                } catch (RpcErrorException ex) {
+                    assert ex.getMessage().contains("insufficient funds");
+                }
+                assert nonces.peek(address) == 7;
+            }
+            List<Long> sent = new ArrayList<>();
+            for (String r : requests) {
+                Matcher m = RAW.matcher(r);
+                if (m.find()) {
+                    sent.add(TransactionDecoder.decode(m.group(1)).getNonce().longValue());
+                }
+            }
+            assert sent.equals(List.of(7L, 7L));
+            // 回退不需要重新同步
+            assert requests.stream().filter(r -> r.contains("eth_getTransactionCount")).count() == 1;
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    /**
+     * 发送结果未知时重新同步
+     */
+    @Test
+    void resyncOnTransportError() throws Exception {
+        HttpServer server = node(503, "unavailable");
+        try {
+            Web3j web3j = Web3j.build(new EuHttpService("http://127.0.0.1:" + server.getAddress().getPort() + "/"));
+            NonceManager nonces = new NonceManager(web3j);
+            Signer signer = Signer.of(PK);
+            PipelinedSender sender = new PipelinedSender(web3j, nonces, 10, 20);
+            List<CompletableFuture<EthSendTransaction>> futures = new ArrayList<>();
+            for (int i = 0; i < 3; i++) {
+                futures.add(sender.send(signer, n -> RawTransaction.createEtherTransaction(n, BigInteger.ONE, BigInteger.valueOf(21000), TO, BigInteger.ONE), 56));
+            }
+            for (CompletableFuture<EthSendTransaction> f : futures) {
+                try {
+                    f.get();
+                    assert false;
+                } catch (ExecutionException ex) {
+                    assert ex.getCause() instanceof ClientConnectionException;
+                }
+            }
+            assert nonces.peek(signer.getAddress()) == -1;
+            assert nonces.next(signer.getAddress()).longValue() == 7;
+            sender.close();
+        } finally {
+            server.stop(0);
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package org.beykery.eu.test;
+
+import org.beykery.eu.util.EthContractUtil;
+import org.beykery.eu.util.ReceiptSource;
+import org.junit.jupiter.api.Test;
+import org.web3j.protocol.Service;
+import org.web3j.protocol.Web3j;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class ReceiptSourceTest {
+
+    /**
+     * 块receipts请求都返回 answer
+     */
+    private static Service node(AtomicReference<String> answer, AtomicInteger calls) {
+        return new Service(false) {
+            @Override
+            protected InputStream performIO(String request) {
+                calls.incrementAndGet();
+                return new ByteArrayInputStream(("{\"jsonrpc\":\"2.0\",\"id\":1," + answer.get() + "}").getBytes());
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+
+    @Test
+    void retryUntilCertain() throws Exception {
+        AtomicReference<String> answer = new AtomicReference<>("\"error\":{\"code\":-32000,\"message\":\"header not found\"}");
+        AtomicInteger calls = new AtomicInteger();
+        Web3j web3j = EthContractUtil.getWeb3j(node(answer, calls));
+
+        ReceiptSource.setProbeBackoff(200);
+        try {
+            // 暂时的错误不缓存结果，退避期间不再探测
+            assert ReceiptSource.of(web3j, 1) == ReceiptSource.TRANSACTION_RECEIPT;
+            assert calls.get() == 2;
+            answer.set("\"result\":[]");
+            assert ReceiptSource.of(web3j, 1) == ReceiptSource.TRANSACTION_RECEIPT;
+            assert calls.get() == 2;
+            Thread.sleep(250);
+            assert ReceiptSource.of(web3j, 1) == ReceiptSource.ETH_BLOCK_RECEIPTS;
+            assert calls.get() == 3;
+            assert ReceiptSource.of(web3j, 1) == ReceiptSource.ETH_BLOCK_RECEIPTS;
+            assert calls.get() == 3;
+        } finally {
+            ReceiptSource.setProbeBackoff(60_000);
+        }
+    }
+
+    @Test
+    void cacheMethodNotFound() throws Exception {
+        AtomicReference<String> answer = new AtomicReference<>("\"error\":{\"code\":-32601,\"message\":\"the method does not exist/is not available\"}");
+        AtomicInteger calls = new AtomicInteger();
+        Web3j web3j = EthContractUtil.getWeb3j(node(answer, calls));
+
+        assert ReceiptSource.of(web3j, 1) == ReceiptSource.TRANSACTION_RECEIPT;
+        assert calls.get() == 2;
+        answer.set("\"result\":[]");
+        assert ReceiptSource.of(web3j, 1) == ReceiptSource.TRANSACTION_RECEIPT;
+        assert calls.get() == 2;
+    }
+}
@@ -0,0 +1,100 @@
+package org.beykery.eu.test;
+
+import org.beykery.eu.event.LogEventScanner;
+import org.beykery.eu.util.EthContractUtil;
+import org.junit.jupiter.api.Test;
+import org.web3j.abi.datatypes.Event;
+import org.web3j.protocol.Service;
+import org.web3j.protocol.geth.Geth;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+public class ReorgTest {
+
+    private static final Pattern NUMBER = Pattern.compile("\"params\":\\[\"(0x[0-9a-f]+|latest)\"");
+
+    /**
+     * 块hash默认由高度决定，forks 里的高度换成分叉后的hash
+     */
+    private static class Node extends Service {
+        private final AtomicLong latest = new AtomicLong(0x10);
+        private final Map<Long, String> forks = new ConcurrentHashMap<>();
+
+        Node() {
+            super(false);
+        }
+
+        private String hash(long h) {
+            return forks.getOrDefault(h, String.format("0x%064x", h));
+        }
+
+        void fork(long from, long to, int tag) {
+            for (long h = from; h <= to; h++) {
+                forks.put(h, String.format("0x%02x%062x", tag, h));
+            }
+        }
+
+        @Override
+        protected InputStream performIO(String request) {
+            String result;
+            if (request.contains("eth_getLogs")) {
+                result = "[]";
+            } else {
+                Matcher m = NUMBER.matcher(request);
+                m.find();
+                long h = m.group(1).equals("latest") ? latest.get() : Long.decode(m.group(1));
+                result = "{\"number\":\"0x" + Long.toHexString(h) + "\",\"hash\":\"" + hash(h) + "\",\"parentHash\":\"" + hash(h - 1)
+                        + "\",\"timestamp\":\"0x" + Long.toHexString(System.currentTimeMillis() / 1000) + "\",\"transactions\":[]}";
+            }
+            return new ByteArrayInputStream(("{\"jsonrpc\":\"2.0\",\"id\":1,\"result\":" + result + "}").getBytes());
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!condition.getAsBoolean()) {
+            assert System.currentTimeMillis() < deadline;
+            Thread.sleep(5);
+        }
+    }
+
+    @Test
+    void rollbackToAncestor() throws Exception {
+        Node node = new Node();
+        Geth web3j = EthContractUtil.getWeb3j(node);
+        ScanListener listener = new ScanListener();
+        LogEventScanner scanner = new LogEventScanner(web3j, web3j, 100, -1, 0, 1, 1, 1, 10, false, listener);
+        scanner.setReorgDepth(8);
+        scanner.start(1, List.of(new Event("Transfer", List.of())), List.of(), null, 0.25, 4);
+        waitFor(() -> listener.reached.get() == 0x10);
+        assert listener.rollbacks.isEmpty();
+
+        // 13..16 被替换，最近的共同祖先是窗口末块 12
+        node.fork(13, 16, 1);
+        node.latest.set(20);
+        waitFor(() -> listener.reached.get() == 20);
+        assert listener.rollbacks.size() == 1;
+        assert listener.rollbacks.get(0)[0] == 13 && listener.rollbacks.get(0)[1] == 16;
+        int n = listener.windows.size();
+        assert listener.windows.get(n - 2)[0] == 13 && listener.windows.get(n - 2)[1] == 16;
+
+        // 回滚后截掉的旧hash不能再参与比较：再从 9 开始分叉，祖先是 8
+        node.fork(9, 20, 2);
+        node.latest.set(24);
+        waitFor(() -> listener.reached.get() == 24 && listener.rollbacks.size() == 2);
+        assert listener.rollbacks.get(1)[0] == 9 && listener.rollbacks.get(1)[1] == 20;
+        scanner.stop();
+    }
+}
@@ -0,0 +1,54 @@
+package org.beykery.eu.test;
+
+import org.beykery.eu.util.EthContractUtil;
+import org.beykery.eu.util.EuHttpService;
+import org.beykery.eu.util.ReplayWeb3jService;
+import org.junit.jupiter.api.Test;
+import org.web3j.protocol.Web3j;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ReplayTest {
+
+    @Test
+    void recordAndReplay() throws Exception {
+        Path file = Files.createTempFile("eu", ".replay");
+        AtomicInteger calls = new AtomicInteger();
+        EuHttpService node = new EuHttpService() {
+            @Override
+            protected InputStream performIO(String request) {
+                String body = "{\"jsonrpc\":\"2.0\",\"id\":1,\"result\":\"0x" + Integer.toHexString(100 + calls.getAndIncrement()) + "\"}";
+                return new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8));
+            }
+        };
+        try {
+            ReplayWeb3jService recorder = ReplayWeb3jService.record(node, file);
+            Web3j web3j = EthContractUtil.getWeb3j(recorder);
+            assert EthContractUtil.currentHeight(web3j) == 100;
+            assert EthContractUtil.currentHeight(web3j) == 101;
+            recorder.close();
+
+            ReplayWeb3jService replay = ReplayWeb3jService.replay(file).latency(1, 2);
+            web3j = EthContractUtil.getWeb3j(replay);
+            assert EthContractUtil.currentHeight(web3j) == 100;
+            assert EthContractUtil.currentHeight(web3j) == 101;
+            assert EthContractUtil.currentHeight(web3j) == 101;
+            assert calls.get() == 2;
+
+            replay.head(1000, 1_700_000_000, 12000, 1000, 1010);
+            Thread.sleep(50);
+            long[] c = replay.currentBlockProvider().currentBlockNumberAndTimestamp();
+            assert c[0] > 1000 && c[0] <= 1010;
+            assert c[1] == 1_700_000_000 + (c[0] - 1000) * 12;
+            assert EthContractUtil.currentHeight(web3j) >= c[0];
+            replay.close();
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package org.beykery.eu.test;
+
+import org.beykery.eu.event.LogEvent;
+import org.beykery.eu.event.LogEventListener;
+import org.beykery.eu.event.PendingTransaction;
+import org.java_websocket.exceptions.WebsocketNotConnectedException;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 记录扫描进度的 listener
+ */
+public class ScanListener implements LogEventListener {
+
+    /**
+     * 已扫描到的最高块
+     */
+    final AtomicLong reached = new AtomicLong();
+
+    /**
+     * 每次扫描的区间 [from, to]
+     */
+    final List<long[]> windows = new CopyOnWriteArrayList<>();
+
+    /**
+     * 收到的事件
+     */
+    final List<LogEvent> events = new CopyOnWriteArrayList<>();
+
+    /**
+     * 回滚的区间 [from, to]
+     */
+    final List<long[]> rollbacks = new CopyOnWriteArrayList<>();
+
+    @Override
+    public void onLogEvents(List<LogEvent> events, long from, long to, long current, long currentTime) {
+        this.events.addAll(events);
+    }
+
+    @Override
+    public void onPendingTransactions(List<PendingTransaction> txs, long current, long currentTime) {
+    }
+
+    @Override
+    public boolean onPendingTransactionHash(String hash, long current, long currentTime) {
+        return true;
+    }
+
+    @Override
+    public void onPendingError(Throwable ex, long current, long currentTime) {
+    }
+
+    @Override
+    public void onOnceScanOver(long from, long to, long current, long currentTime, long logSize) {
+        windows.add(new long[]{from, to});
+        reached.accumulateAndGet(to, Math::max);
+    }
+
+    @Override
+    public void onReachHighest(long h) {
+    }
+
+    @Override
+    public void onError(Throwable ex, long from, long to, long current, long currentTime) {
+    }
+
+    @Override
+    public void onWebsocketBroken(WebsocketNotConnectedException ex, long current, long currentTime) {
+    }
+
+    @Override
+    public void onRollback(long from, long to, long current, long currentTime) {
+        rollbacks.add(new long[]{from, to});
+    }
+
+    @Override
+    public boolean reverse() {
+        return false;
+    }
+}
@@ -0,0 +1,63 @@
+package org.beykery.eu.test;
+
+import org.beykery.eu.event.LogEventScanner;
+import org.beykery.eu.util.EthContractUtil;
+import org.junit.jupiter.api.Test;
+import org.web3j.abi.datatypes.Event;
+import org.web3j.protocol.Service;
+import org.web3j.protocol.geth.Geth;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.List;
+
+public class ScannerStopTest {
+
+    /**
+     * 链头固定在 0x10，块时间为当前时间
+     */
+    private static Service node() {
+        return new Service(false) {
+            @Override
+            protected InputStream performIO(String request) {
+                String result = request.contains("eth_getLogs") ? "[]"
+                        : "{\"number\":\"0x10\",\"timestamp\":\"0x" + Long.toHexString(System.currentTimeMillis() / 1000) + "\",\"hash\":\"0x01\",\"transactions\":[]}";
+                return new ByteArrayInputStream(("{\"jsonrpc\":\"2.0\",\"id\":1,\"result\":" + result + "}").getBytes());
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+
+    private static Thread scanThread() {
+        return Thread.getAllStackTraces().keySet().stream()
+                .filter(t -> t.getName().equals("thread - event"))
+                .findFirst().orElse(null);
+    }
+
+    /**
+     * 出块间隔1分钟，stop 后扫描线程应立即结束而不是等到下一个块
+     */
+    @Test
+    void stopEndsWait() throws Exception {
+        Geth web3j = EthContractUtil.getWeb3j(node());
+        ScanListener listener = new ScanListener();
+        LogEventScanner scanner = new LogEventScanner(web3j, web3j, 60_000, 1000, 60_000, 1, 1, 1, 10, false, listener);
+        scanner.start(0x10, List.of(new Event("Transfer", List.of())), List.of(), null, 0.25, 10);
+        long begin = System.currentTimeMillis();
+        while (listener.reached.get() < 0x10) {
+            assert System.currentTimeMillis() - begin < 5000;
+            Thread.sleep(5);
+        }
+        Thread thread = scanThread();
+        assert thread != null;
+        Thread.sleep(200);
+        begin = System.currentTimeMillis();
+        scanner.stop();
+        thread.join(2000);
+        assert !thread.isAlive();
+        assert System.currentTimeMillis() - begin < 1000;
+    }
+}
@@ -0,0 +1,86 @@
+package org.beykery.eu.test;
+
+import org.beykery.eu.util.EthContractUtil;
+import org.beykery.eu.util.Signer;
+import org.junit.jupiter.api.Test;
+import org.web3j.crypto.RawTransaction;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class SignerTest {
+
+    private static final String PK = "0x4c0883a69102937d6231471b5dbb6204fe5129617082792ae468d01a3f362318";
+    private static final String PK2 = "0x8da4ef21b864d2cc526dbdb2a120bd2874c36c9d0a1fb7f8c63d7f7a8b41de8f";
+    private static final String TO = "0x8aCc161acB2626505755bBF36184841B8c099806";
+
+    @Test
+    void cacheIsOptIn() {
+        Signer.setCacheSize(0);
+        assert Signer.of(PK) != Signer.of(PK);
+        EthContractUtil.signTransaction(PK, tx(1), 56);
+        assert Signer.cached() == 0;
+
+        Signer.setCacheSize(1);
+        try {
+            Signer a = Signer.of(PK);
+            assert Signer.of(PK) == a;
+            // 0x 前缀和大小写不影响
+            assert Signer.of(PK.substring(2).toUpperCase()) == a;
+            Signer.of(PK2);
+            assert Signer.cached() == 1;
+            assert Signer.of(PK) != a;
+        } finally {
+            Signer.setCacheSize(0);
+        }
+        assert Signer.cached() == 0;
+    }
+
+    @Test
+    void concurrent() throws Exception {
+        Signer.setCacheSize(16);
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<Signer>> signers = new ArrayList<>();
+            for (int i = 0; i < 32; i++) {
+                signers.add(pool.submit(() -> {
+                    start.await();
+                    return Signer.of(PK);
+                }));
+            }
+            start.countDown();
+            Set<Signer> distinct = new HashSet<>();
+            for (Future<Signer> f : signers) {
+                distinct.add(f.get());
+            }
+            assert distinct.size() == 1;
+
+            // 共享一个 Signer 并发签名，结果与单线程一致
+            Signer signer = distinct.iterator().next();
+            List<Future<String>> signed = new ArrayList<>();
+            for (int i = 0; i < 64; i++) {
+                int nonce = i;
+                signed.add(pool.submit(() -> signer.sign(tx(nonce), 56)));
+            }
+            Signer fresh = new Signer(PK);
+            for (int i = 0; i < signed.size(); i++) {
+                assert signed.get(i).get().equals(fresh.sign(tx(i), 56));
+            }
+        } finally {
+            pool.shutdown();
+            Signer.setCacheSize(0);
+        }
+    }
+
+    private static RawTransaction tx(long nonce) {
+        return EthContractUtil.rawTransaction(BigInteger.valueOf(nonce), BigInteger.ONE, BigInteger.valueOf(21000), TO, BigInteger.ONE, "0x");
+    }
+}